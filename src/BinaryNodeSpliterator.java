@@ -0,0 +1,262 @@
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A Spliterator over the values of a binary search tree in sorted order. It covers the
+ * in-order range of nodes from current up to (but not including) fence, and moves from
+ * one node to the next by following parent references, so traversal needs no stack.
+ *
+ * Splitting hands off the values before the root of the remaining subtree, and keeps
+ * that root together with its right subtree. Each split therefore moves one level down
+ * the tree, and a balanced tree is divided evenly in O(log n) splits.
+ *
+ * The tree must not be modified while the spliterator is in use.
+ */
+public class BinaryNodeSpliterator<T> implements Spliterator<T> {
+
+    // next node to visit, or the same as fence once every node has been visited
+    private BinaryNode<T> current;
+    // first node that is not covered, or null to cover every node after current
+    private final BinaryNode<T> fence;
+    // node the next split happens at, or null when this spliterator cannot be split
+    private BinaryNode<T> splitRoot;
+    // true after visiting a node before splitRoot, which leaves current somewhere
+    // inside splitRoot's left subtree instead of at its start
+    private boolean advancedBeforeSplitRoot;
+    // exact number of remaining values while sized, an estimate after splitting
+    private long estimate;
+    private boolean sized;
+
+    /**
+     * Creates a spliterator over every value in the tree rooted at root.
+     * @param root the root of the tree, or null for an empty tree
+     * @param size the number of nodes in the tree
+     */
+    public BinaryNodeSpliterator(BinaryNode<T> root, long size) {
+        this(leftmost(root), null, root, false, size, true);
+    }
+
+    private BinaryNodeSpliterator(BinaryNode<T> current, BinaryNode<T> fence, BinaryNode<T> splitRoot,
+            boolean advancedBeforeSplitRoot, long estimate, boolean sized) {
+        this.current = current;
+        this.fence = fence;
+        this.splitRoot = splitRoot;
+        this.advancedBeforeSplitRoot = advancedBeforeSplitRoot;
+        this.estimate = estimate;
+        this.sized = sized;
+    }
+
+    /**
+     * @return the node with the smallest value in the subtree rooted at node,
+     * or null if node is null
+     */
+    private static <T> BinaryNode<T> leftmost(BinaryNode<T> node) {
+        if (node != null) {
+            while (node.getLeft() != null) {
+                node = node.getLeft();
+            }
+        }
+        return node;
+    }
+
+    /**
+     * @return the node that follows node in an in-order traversal, or null if there is none
+     */
+    private static <T> BinaryNode<T> successor(BinaryNode<T> node) {
+        if (node.getRight() != null) {
+            return leftmost(node.getRight());
+        }
+        while (node.getUp() != null && node.getUp().getRight() == node) {
+            node = node.getUp();
+        }
+        return node.getUp();
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        BinaryNode<T> split = splitRoot;
+        if (split == null || current == split || current == fence) {
+            return null;
+        }
+
+        // The prefix can only be split further if current is still at the start of split's left subtree.
+        BinaryNodeSpliterator<T> prefix = new BinaryNodeSpliterator<>(current, split,
+            advancedBeforeSplitRoot ? null : split.getLeft(), advancedBeforeSplitRoot, estimate >>>= 1, false);
+
+        current = split;
+        splitRoot = split.getRight();
+        advancedBeforeSplitRoot = false;
+        sized = false;
+        return prefix;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        BinaryNode<T> node = current;
+        if (node == fence) {
+            return false;
+        }
+
+        if (node == splitRoot) {
+            // Everything left to visit is in the right subtree, which can be split again.
+            splitRoot = node.getRight();
+            advancedBeforeSplitRoot = false;
+        } else {
+            advancedBeforeSplitRoot = true;
+        }
+        current = successor(node);
+        if (estimate > 0) {
+            estimate--;
+        }
+        action.accept(node.getData());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        BinaryNode<T> node = current;
+        BinaryNode<T> end = fence;
+        current = end;
+        splitRoot = null;
+        estimate = 0;
+
+        while (node != end) {
+            action.accept(node.getData());
+
+            // Inlined successor(node).
+            BinaryNode<T> next = node.getRight();
+            if (next != null) {
+                while (next.getLeft() != null) {
+                    next = next.getLeft();
+                }
+            } else {
+                next = node.getUp();
+                while (next != null && next.getRight() == node) {
+                    node = next;
+                    next = node.getUp();
+                }
+            }
+            node = next;
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL | (sized ? Spliterator.SIZED : 0);
+    }
+
+    /**
+     * @return null, because the values are sorted in their natural ordering
+     */
+    @Override
+    public Comparator<? super T> getComparator() {
+        return null;
+    }
+
+    //-----------------------------------------------------------------------------------------------------------------------------//
+    //                                                          TEST METHODS                                                       //
+    //-----------------------------------------------------------------------------------------------------------------------------//
+
+    /**
+     * Tests sequential and parallel streams over the lecture example (14, 7, 18, 23, 1, 11, 20, 29, 25, 27).
+     * @return true if both streams return the values in sorted order
+     */
+    public static boolean test1() {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        for (int dataPoint : new int[] {14, 7, 18, 23, 1, 11, 20, 29, 25, 27}) {
+            tree.insert(dataPoint);
+        }
+
+        String expected = "[1, 7, 11, 14, 18, 20, 23, 25, 27, 29]";
+        return tree.stream().collect(Collectors.toList()).toString().equals(expected)
+            && tree.parallelStream().collect(Collectors.toList()).toString().equals(expected)
+            && tree.stream().count() == 10 && new RedBlackTree<Integer>().stream().count() == 0;
+    }
+
+    /**
+     * Tests that splitting a large red-black tree covers every value exactly once, with
+     * both halves of the first split about the same size.
+     * @return true if parallel aggregations match the sequential ones and the first
+     * split divides the values at the root
+     */
+    public static boolean test2() {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        int count = 100_000;
+        for (int i = 0; i < count; i++) {
+            tree.insert((int)((i * 48271L) % count));
+        }
+
+        Spliterator<Integer> suffix = tree.spliterator();
+        Spliterator<Integer> prefix = suffix.trySplit();
+        int[] prefixCount = new int[1];
+        prefix.forEachRemaining(value -> prefixCount[0]++);
+        boolean firstSplitAtRoot = prefixCount[0] == tree.root.getData() && prefixCount[0] > count / 4;
+
+        long sum = tree.parallelStream().mapToLong(Integer::longValue).sum();
+        long evens = tree.parallelStream().filter(value -> value % 2 == 0).count();
+        boolean sorted = tree.parallelStream().collect(Collectors.toList())
+            .equals(IntStream.range(0, count).boxed().collect(Collectors.toList()));
+
+        return firstSplitAtRoot && sum == (long)count * (count - 1) / 2 && evens == count / 2 && sorted;
+    }
+
+    /**
+     * Tests that values visited one at a time with tryAdvance() before splitting are not
+     * visited again, including for an unbalanced BinarySearchTree with duplicate values.
+     * @return true if the values from tryAdvance() and both halves of later splits add
+     * up to the whole tree in sorted order, and the tree's size is reported before any
+     * value is visited
+     */
+    public static boolean test3() {
+        BinarySearchTree<Integer> tree = new BinarySearchTree<>();
+        for (int dataPoint : new int[] {5, 3, 8, 1, 4, 7, 9, 2, 6, 5, 5, 10}) {
+            tree.insert(dataPoint);
+        }
+
+        StringBuilder visited = new StringBuilder();
+        Spliterator<Integer> suffix = tree.spliterator();
+        suffix.tryAdvance(visited::append);
+        suffix.tryAdvance(visited::append);
+        Spliterator<Integer> prefix = suffix.trySplit();
+        if (prefix == null) {
+            return false;
+        }
+        Spliterator<Integer> innerPrefix = prefix.trySplit();
+        if (innerPrefix != null) {
+            innerPrefix.forEachRemaining(visited::append);
+        }
+        prefix.forEachRemaining(visited::append);
+        Spliterator<Integer> last = suffix.trySplit();
+        if (last != null) {
+            last.forEachRemaining(visited::append);
+        }
+        suffix.forEachRemaining(visited::append);
+
+        if (!visited.toString().equals("1234555678910") || tree.spliterator().getExactSizeIfKnown() != 12) {
+            return false;
+        }
+        tree.clear();
+        return tree.size() == 0 && tree.spliterator().getExactSizeIfKnown() == 0;
+    }
+
+    public static void main (String[] args) {
+        System.out.println("Test 1: " + test1());
+        System.out.println("Test 2: " + test2());
+        System.out.println("Test 3: " + test3());
+    }
+
+}
@@ -7,9 +7,15 @@ Designed around the provided BinaryNode.java class and SortedCollection.java int
 K. Almizyed, 01/24/2026
 */
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+
 public class BinarySearchTree<T extends Comparable<T>> implements SortedCollection<T> {
     
     protected BinaryNode<T> root = null;
+    // number of nodes in the tree, kept by every insert so that size() does not walk the tree
+    protected int count = 0;
 
     /**
      * Inserts a new data value into the sorted collection.
@@ -28,6 +34,7 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
             BinaryNode<T> newNode = new BinaryNode<>(data);
             insertHelper(newNode, root);
         }
+        count++;
     }
 
     /**
@@ -123,28 +130,49 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     }
 
     /**
-     * Counts the number of values in the collection, with each duplicate value
-     * being counted separately within the value returned.
-     * @return the number of values in the collection, including duplicates
+     * Collects every value between low and high (both inclusive) in sorted order.
+     * A null bound leaves that side of the range open.
+     * @param low the smallest value to include, or null for no lower bound
+     * @param high the largest value to include, or null for no upper bound
+     * @return a list of the values within the range, including duplicates
      */
-    @Override
-    public int size() {
-        if (root != null) {
-           return sizeHelper(root);
-        }
-        return 0;
+    public List<T> range(Comparable<T> low, Comparable<T> high) {
+        List<T> values = new ArrayList<>();
+        rangeHelper(low, high, root, values);
+        return values;
     }
 
     /**
-     * Performs a pre-order traversal, counting each node visited until all subtrees have been visited.
-     * @return the total number of nodes from the root node.
-     * When the provided subtree is null, this method returns false.
+     * Performs an in-order traversal that skips every subtree lying completely outside
+     * of the range, adding the values within the range to the provided list.
      */
-    private int sizeHelper(BinaryNode<T> subtree) {
-        if (subtree != null) {
-            return sizeHelper(subtree.getLeft()) + sizeHelper(subtree.getRight()) + 1;
+    private void rangeHelper(Comparable<T> low, Comparable<T> high, BinaryNode<T> subtree, List<T> values) {
+        if (subtree == null) {
+            return;
+        }
+
+        boolean aboveLow = (low == null || low.compareTo(subtree.getData()) <= 0);
+        boolean belowHigh = (high == null || high.compareTo(subtree.getData()) >= 0);
+
+        if (aboveLow) {
+            rangeHelper(low, high, subtree.getLeft(), values);
+        }
+        if (aboveLow && belowHigh) {
+            values.add(subtree.getData());
+        }
+        if (belowHigh) {
+            rangeHelper(low, high, subtree.getRight(), values);
         }
-        return 0;
+    }
+
+    /**
+     * Counts the number of values in the collection, with each duplicate value
+     * being counted separately within the value returned.
+     * @return the number of values in the collection, including duplicates
+     */
+    @Override
+    public int size() {
+        return count;
     }
 
     /**
@@ -171,6 +199,17 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     @Override
     public void clear() {
         root = null;
+        count = 0;
+    }
+
+    /**
+     * Creates a Spliterator over the values in the tree in sorted order. The tree must
+     * not be modified while the Spliterator is in use.
+     * @return a Spliterator that splits the tree at the roots of its subtrees
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return new BinaryNodeSpliterator<>(root, count);
     }
 
     @Override
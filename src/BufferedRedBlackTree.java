@@ -0,0 +1,474 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+
+/**
+ * A RedBlackTree that buffers inserted values before merging them into the tree in
+ * batches, in the style of a log-structured merge tree. Inserts append to a small
+ * buffer. When the buffer fills up, it is sorted into a run, and runs of similar
+ * length are merged with each other, like the carries of a binary counter. Once the
+ * runs hold as many values as the tree itself, they are merged with the tree's values
+ * in a single linear pass and the tree is rebuilt from the result, so that every value
+ * is copied a logarithmic number of times in sequential passes instead of being
+ * inserted from the root on its own.
+ *
+ * contains(), range(), size() and isEmpty() check the buffer, the runs, and the tree
+ * without modifying any of them, so they can run concurrently with each other. get(),
+ * spliterator() and toString() need every value to be in the tree, so they merge the
+ * buffer and the runs into it first, and must not run concurrently with other operations.
+ */
+public class BufferedRedBlackTree<T extends Comparable<T>> extends RedBlackTree<T> {
+
+    // default number of values buffered before they are sorted into a run,
+    // chosen from the results of BufferedRedBlackTreeBenchmark
+    public static final int DEFAULT_BUFFER_CAPACITY = 64;
+
+    // flush() rebuilds the tree when the values being merged are at least this fraction
+    // of its size, and inserts them one by one otherwise
+    protected static final int REBUILD_FRACTION = 16;
+
+    // append-only buffer of values that have not been sorted into a run yet
+    protected Object[] buffer;
+    // number of values currently stored in the buffer
+    protected int bufferSize = 0;
+    // sorted runs of values that have not been merged into the tree yet, longest first
+    protected final List<Object[]> runs = new ArrayList<>();
+    // total number of values stored in the runs
+    protected int runValues = 0;
+
+    /**
+     * Creates an empty tree with a buffer of DEFAULT_BUFFER_CAPACITY values.
+     */
+    public BufferedRedBlackTree() { this(DEFAULT_BUFFER_CAPACITY); }
+
+    /**
+     * Creates an empty tree with a buffer of the provided capacity.
+     * @param bufferCapacity the number of values buffered before they are sorted into a run
+     * @throws IllegalArgumentException if bufferCapacity is less than 1
+     */
+    public BufferedRedBlackTree(int bufferCapacity) {
+        if (bufferCapacity < 1) {
+            throw new IllegalArgumentException("Buffer capacity must be at least 1.");
+        }
+        this.buffer = new Object[bufferCapacity];
+    }
+
+    /**
+     * Appends a new data value to the buffer, sorting the buffer into a run first if it
+     * is full.
+     * @param data the new value being inserted
+     * @throws NullPointerException if data argument is null, we do not allow
+     * null values to be stored within a SortedCollection
+     */
+    @Override
+    public void insert(T data) throws NullPointerException {
+        if (data == null) {
+            throw new NullPointerException("Cannot insert a null value.");
+        }
+        if (bufferSize == buffer.length) {
+            sortBufferIntoRun();
+            if (runValues >= count) {
+                mergeIntoTree(takeRuns());
+            }
+        }
+        buffer[bufferSize++] = data;
+    }
+
+    /**
+     * Sorts the buffered values into a new run, merging it with the previous runs for as
+     * long as they are not longer than the new run. This keeps the runs sorted by length
+     * and their number logarithmic in the number of values they hold.
+     */
+    protected void sortBufferIntoRun() {
+        if (bufferSize == 0) {
+            return;
+        }
+
+        Object[] run = Arrays.copyOf(buffer, bufferSize);
+        Arrays.sort(run);
+        runValues += bufferSize;
+        Arrays.fill(buffer, 0, bufferSize, null);
+        bufferSize = 0;
+
+        while (!runs.isEmpty() && runs.get(runs.size() - 1).length <= run.length) {
+            run = mergeSorted(runs.remove(runs.size() - 1), run);
+        }
+        runs.add(run);
+    }
+
+    /**
+     * Removes every run, merging them from shortest to longest.
+     * @return the values of all runs in ascending order
+     */
+    private Object[] takeRuns() {
+        Object[] batch = new Object[0];
+        for (int i = runs.size() - 1; i >= 0; i--) {
+            batch = mergeSorted(runs.get(i), batch);
+        }
+        runs.clear();
+        runValues = 0;
+        return batch;
+    }
+
+    /**
+     * Merges every buffered value into the tree. Does nothing when nothing is buffered.
+     */
+    public void flush() {
+        sortBufferIntoRun();
+        if (runValues > 0) {
+            mergeIntoTree(takeRuns());
+        }
+    }
+
+    /**
+     * Merges a sorted batch of values into the tree. A batch that is large relative to
+     * the tree is merged with the tree's values in a single pass and the tree is rebuilt
+     * from the result, while a smaller batch is inserted one value at a time.
+     * @param batch the values being merged, in ascending order
+     */
+    @SuppressWarnings("unchecked")
+    protected void mergeIntoTree(Object[] batch) {
+        if (batch.length * REBUILD_FRACTION >= count) {
+            Object[] merged = mergeSorted(super.range(null, null).toArray(), batch);
+            buildFromSorted((List<T>)(List<?>)Arrays.asList(merged));
+        } else {
+            RedBlackNode<T> finger = null;
+            for (Object value : batch) {
+                finger = insertFromFinger((T)value, finger);
+            }
+        }
+    }
+
+    /**
+     * Merges two arrays of values in ascending order into a new array.
+     * @return the values of both arrays in ascending order
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> Object[] mergeSorted(Object[] first, Object[] second) {
+        Object[] merged = new Object[first.length + second.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < first.length && j < second.length) {
+            merged[k++] = (((T)first[i]).compareTo((T)second[j]) <= 0) ? first[i++] : second[j++];
+        }
+        System.arraycopy(first, i, merged, k, first.length - i);
+        System.arraycopy(second, j, merged, k + first.length - i, second.length - j);
+        return merged;
+    }
+
+    /**
+     * Inserts data into the tree, starting the descent from the lowest ancestor of
+     * finger whose subtree can hold data. The finger must be null or hold a value
+     * that is less than or equal to data, which is the case when values are inserted
+     * in ascending order.
+     * @param data the value being inserted
+     * @param finger the previously inserted node, or null to descend from the root
+     * @return the newly inserted node, to be used as the finger for the next value
+     */
+    protected RedBlackNode<T> insertFromFinger(T data, RedBlackNode<T> finger) {
+        RedBlackNode<T> newNode = new RedBlackNode<>(data);
+        count++;
+
+        if (root == null) {
+            newNode.flipColor();
+            root = newNode;
+            return newNode;
+        }
+
+        // Climb up from the finger until the parent's value bounds data from above.
+        BinaryNode<T> start = (finger == null) ? root : finger;
+        while (start.getUp() != null && data.compareTo(start.getUp().getData()) > 0) {
+            start = start.getUp();
+        }
+
+        insertHelper(newNode, start);
+        ensureRedProperty(newNode);
+        return newNode;
+    }
+
+    /**
+     * Finds the first value of a run that is not less than bound.
+     * @return the index of that value, or the run's length if every value is less than bound
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> int lowerBound(Object[] run, Comparable<T> bound) {
+        int low = 0;
+        int high = run.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (bound.compareTo((T)run[middle]) > 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Check whether data is stored in the buffer, in one of the runs, or in the tree.
+     * @param find the value to check for in the collection
+     * @return true if the collection contains data one or more times,
+     * and false otherwise
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Comparable<T> find) {
+        for (int i = 0; i < bufferSize; i++) {
+            if (find.compareTo((T)buffer[i]) == 0) {
+                return true;
+            }
+        }
+        for (Object[] run : runs) {
+            int index = lowerBound(run, find);
+            if (index < run.length && find.compareTo((T)run[index]) == 0) {
+                return true;
+            }
+        }
+        return super.contains(find);
+    }
+
+    /**
+     * Merges every buffered value into the tree before finding the node that holds find,
+     * since buffered values do not have a node yet.
+     * @param find the value to look for
+     * @return a node holding a value equal to find, or null if there is none
+     */
+    @Override
+    public BinaryNode<T> get(Comparable<T> find) {
+        flush();
+        return super.get(find);
+    }
+
+    /**
+     * Collects the values within the range from the tree, the runs, and the buffer,
+     * without merging anything into the tree.
+     * @param low the smallest value to include, or null for no lower bound
+     * @param high the largest value to include, or null for no upper bound
+     * @return a list of the values within the range, including duplicates
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<T> range(Comparable<T> low, Comparable<T> high) {
+        List<T> stored = super.range(low, high);
+
+        // Sorting the concatenated runs is a cheap merge, since the sort detects them.
+        List<T> buffered = new ArrayList<>();
+        for (Object[] run : runs) {
+            int from = (low == null) ? 0 : lowerBound(run, low);
+            for (int i = from; i < run.length && (high == null || high.compareTo((T)run[i]) >= 0); i++) {
+                buffered.add((T)run[i]);
+            }
+        }
+        for (int i = 0; i < bufferSize; i++) {
+            T value = (T)buffer[i];
+            if ((low == null || low.compareTo(value) <= 0) && (high == null || high.compareTo(value) >= 0)) {
+                buffered.add(value);
+            }
+        }
+        if (buffered.isEmpty()) {
+            return stored;
+        }
+        buffered.sort(null);
+
+        List<T> merged = new ArrayList<>(stored.size() + buffered.size());
+        int i = 0;
+        int j = 0;
+        while (i < stored.size() || j < buffered.size()) {
+            if (j == buffered.size() || (i < stored.size() && stored.get(i).compareTo(buffered.get(j)) <= 0)) {
+                merged.add(stored.get(i++));
+            } else {
+                merged.add(buffered.get(j++));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Merges every buffered value into the tree before creating a Spliterator over its values.
+     * @return a Spliterator over every value in sorted order
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        flush();
+        return super.spliterator();
+    }
+
+    /**
+     * Counts the number of values in the tree, the runs, and the buffer, with each
+     * duplicate value being counted separately within the value returned.
+     * @return the number of values in the collection, including duplicates
+     */
+    @Override
+    public int size() {
+        return count + runValues + bufferSize;
+    }
+
+    /**
+     * Checks if the tree, the runs, and the buffer are all empty.
+     * @return true if the collection contains 0 values, false otherwise
+     */
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes all values from the tree, the runs, and the buffer.
+     */
+    @Override
+    public void clear() {
+        super.clear();
+        runs.clear();
+        runValues = 0;
+        Arrays.fill(buffer, 0, bufferSize, null);
+        bufferSize = 0;
+    }
+
+    /**
+     * Merges every buffered value into the tree so that the level-order string shows every value.
+     */
+    @Override
+    public String toString() {
+        flush();
+        return super.toString();
+    }
+
+    //-----------------------------------------------------------------------------------------------------------------------------//
+    //                                                          TEST METHODS                                                       //
+    //-----------------------------------------------------------------------------------------------------------------------------//
+
+    /**
+     * Tests that buffered values are visible to contains() and size() before they are merged,
+     * and to get(), which merges them, and that the lecture example holds the same values as
+     * a RedBlackTree once merged.
+     * @return true if values are found in the buffer and the flushed tree is a valid
+     * red-black tree with the same values as RedBlackTree
+     */
+    public static boolean test1() {
+        BufferedRedBlackTree<Integer> tree = new BufferedRedBlackTree<>(16);
+        RedBlackTree<Integer> expected = new RedBlackTree<>();
+
+        int[] data = {14, 7, 18, 23};
+
+        for (int dataPoint : data) {
+            tree.insert(dataPoint);
+            expected.insert(dataPoint);
+        }
+
+        if (tree.size() != 4 || !tree.contains(18) || tree.contains(19) || tree.root != null) {
+            return false;
+        }
+
+        // get() has to merge the buffer, since buffered values have no node to return.
+        if (tree.get(18) == null || tree.get(18).getData() != 18 || tree.get(19) != null || tree.bufferSize != 0) {
+            return false;
+        }
+
+        return blackHeight((RedBlackNode<Integer>)tree.root) >= 0 && tree.range(null, null).equals(expected.range(null, null));
+    }
+
+    /**
+     * Tests that many unsorted inserts, including duplicates, spread over several merges
+     * produce a valid red-black tree whose in-order traversal is sorted.
+     * @return true if every value is found, the size is correct, and both red-black
+     * properties hold after the final merge
+     */
+    public static boolean test2() {
+        BufferedRedBlackTree<Integer> tree = new BufferedRedBlackTree<>(8);
+
+        int[] sorted = new int[500];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = (i * 7919) % 211;
+            tree.insert(sorted[i]);
+        }
+        Arrays.sort(sorted);
+
+        for (int value : sorted) {
+            if (!tree.contains(value)) {
+                return false;
+            }
+        }
+
+        tree.flush();
+        if (tree.size() != sorted.length || blackHeight((RedBlackNode<Integer>)tree.root) < 0) {
+            return false;
+        }
+
+        StringBuilder expected = new StringBuilder("[ ");
+        for (int i = 0; i < sorted.length; i++) {
+            expected.append(sorted[i]).append(i < sorted.length - 1 ? ", " : " ]");
+        }
+        return tree.root.toInOrderString().replaceAll("\u001B\\[[0-9]+m", "").equals(expected.toString());
+    }
+
+    /**
+     * Tests that clear() empties both the buffer and the tree.
+     * @return true if the tree is empty after clear() and accepts new values afterwards
+     */
+    public static boolean test3() {
+        BufferedRedBlackTree<Character> tree = new BufferedRedBlackTree<>(4);
+
+        for (char dataPoint : new char[] {'Q', 'J', 'V', 'F', 'L', 'T'}) {
+            tree.insert(dataPoint);
+        }
+        tree.clear();
+
+        if (!tree.isEmpty() || tree.contains('Q') || tree.contains('T')) {
+            return false;
+        }
+
+        tree.insert('U');
+        return tree.size() == 1 && tree.contains('U');
+    }
+
+    /**
+     * Tests range queries while values are spread over the tree, several runs, and the buffer.
+     * @return true if every range matches the sorted values within it, and range queries
+     * leave the tree, the runs, and the buffer unchanged
+     */
+    public static boolean test4() {
+        BufferedRedBlackTree<Integer> tree = new BufferedRedBlackTree<>(4);
+        List<Integer> sorted = new ArrayList<>();
+        for (int i = 0; i < 103; i++) {
+            int value = (i * 37) % 101;
+            tree.insert(value);
+            sorted.add(value);
+        }
+        sorted.sort(null);
+
+        BinaryNode<Integer> root = tree.root;
+        int runs = tree.runs.size();
+        int bufferSize = tree.bufferSize;
+        if (root == null || runs < 2 || bufferSize == 0) {
+            return false;
+        }
+
+        for (int low = -1; low <= 101; low += 7) {
+            for (int high = low; high <= 102; high += 11) {
+                List<Integer> expected = new ArrayList<>();
+                for (int value : sorted) {
+                    if (value >= low && value <= high) {
+                        expected.add(value);
+                    }
+                }
+                if (!tree.range(low, high).equals(expected)) {
+                    return false;
+                }
+            }
+        }
+
+        return tree.range(null, null).equals(sorted) && tree.root == root && tree.runs.size() == runs
+            && tree.bufferSize == bufferSize && tree.size() == sorted.size();
+    }
+
+    public static void main (String[] args) {
+        System.out.println("Test 1: " + test1());
+        System.out.println("Test 2: " + test2());
+        System.out.println("Test 3: " + test3());
+        System.out.println("Test 4: " + test4());
+    }
+
+}
@@ -0,0 +1,68 @@
+import java.util.Random;
+
+/**
+ * Compares RedBlackTree with BufferedRedBlackTree at several buffer capacities, for
+ * random inserts only and for random inserts mixed with lookups of inserted values.
+ * Each workload is repeated on a fresh tree, and the fastest repetition is reported
+ * so that JIT compilation and garbage collection pauses do not skew the comparison.
+ */
+public class BufferedRedBlackTreeBenchmark {
+
+    private static final int INSERTS = 1_000_000;
+    private static final int REPETITIONS = 5;
+    private static final int[] CAPACITIES = {16, 64, 256, 1024, 4096};
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        Integer[] values = new Integer[INSERTS];
+        for (int i = 0; i < INSERTS; i++) {
+            values[i] = random.nextInt();
+        }
+
+        System.out.printf("%d random inserts, best of %d%n", INSERTS, REPETITIONS);
+        System.out.printf("%28s %16s %24s%n", "", "inserts (ms)", "insert + contains (ms)");
+        System.out.printf("%28s %16.0f %24.0f%n", "RedBlackTree",
+            bestMillis(() -> new RedBlackTree<>(), values, false), bestMillis(() -> new RedBlackTree<>(), values, true));
+        for (int capacity : CAPACITIES) {
+            System.out.printf("%28s %16.0f %24.0f%n", "BufferedRedBlackTree(" + capacity + ")",
+                bestMillis(() -> new BufferedRedBlackTree<>(capacity), values, false),
+                bestMillis(() -> new BufferedRedBlackTree<>(capacity), values, true));
+        }
+    }
+
+    /**
+     * Creates the trees being compared.
+     */
+    private interface TreeFactory {
+        RedBlackTree<Integer> create();
+    }
+
+    /**
+     * Inserts every value into a fresh tree REPETITIONS times, optionally looking up a
+     * previously inserted value after every insert.
+     * @return the duration of the fastest repetition in milliseconds
+     */
+    private static double bestMillis(TreeFactory factory, Integer[] values, boolean withLookups) {
+        long best = Long.MAX_VALUE;
+        for (int repetition = 0; repetition < REPETITIONS; repetition++) {
+            RedBlackTree<Integer> tree = factory.create();
+            int found = 0;
+
+            long start = System.nanoTime();
+            for (int i = 0; i < values.length; i++) {
+                tree.insert(values[i]);
+                if (withLookups) {
+                    found += tree.contains(values[(i * 7) % (i + 1)]) ? 1 : 0;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            if (tree.size() != values.length || (withLookups && found != values.length)) {
+                throw new IllegalStateException("The tree lost a value.");
+            }
+            best = Math.min(best, elapsed);
+        }
+        return best / 1e6;
+    }
+
+}
@@ -0,0 +1,70 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This interface defines how the values stored in a SortedCollection are written to
+ * and read back from a compact binary form, so that they can be sent over a socket
+ * or saved to a file.
+ */
+public interface KeyCodec<T> {
+
+    // largest number of UTF-8 bytes in a string encoded by STRING
+    public static final int MAX_STRING_BYTES = 1 << 16;
+
+    /**
+     * Encodes integers as 4 big-endian bytes.
+     */
+    public static final KeyCodec<Integer> INTEGER = new KeyCodec<>() {
+        @Override
+        public void write(Integer key, DataOutput out) throws IOException { out.writeInt(key); }
+
+        @Override
+        public Integer read(DataInput in) throws IOException { return in.readInt(); }
+    };
+
+    /**
+     * Encodes strings of up to MAX_STRING_BYTES UTF-8 bytes as a 4 byte length followed
+     * by their UTF-8 bytes.
+     */
+    public static final KeyCodec<String> STRING = new KeyCodec<>() {
+        @Override
+        public void write(String key, DataOutput out) throws IOException {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > MAX_STRING_BYTES) {
+                throw new IOException("String of " + bytes.length + " bytes is longer than " + MAX_STRING_BYTES + " bytes.");
+            }
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_STRING_BYTES) {
+                throw new IOException("Invalid string length " + length + ".");
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Writes the binary form of a value.
+     * @param key the value being written
+     * @param out the destination of the encoded bytes
+     * @throws IOException if writing to out fails
+     */
+    public void write(T key, DataOutput out) throws IOException;
+
+    /**
+     * Reads back a value that was written by write().
+     * @param in the source of the encoded bytes
+     * @return the decoded value
+     * @throws IOException if reading from in fails
+     */
+    public T read(DataInput in) throws IOException;
+
+}
@@ -0,0 +1,191 @@
+import java.util.Arrays;
+
+/**
+ * A histogram of latencies in nanoseconds, laid out like an HDR histogram: values
+ * below 128 are counted exactly, and every larger power of two is split into 64
+ * equally sized buckets. Every recorded value is therefore reported with less than
+ * 1.6% relative error, using a fixed amount of memory and no allocation per value.
+ */
+public class LatencyHistogram {
+
+    // number of buckets every power of two (above 127) is split into, as a power of two
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // enough buckets for every non-negative long value
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + 2 * SUB_BUCKET_COUNT;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount = 0;
+    private double totalValue = 0;
+    private long maxValue = 0;
+
+    /**
+     * Counts a single latency.
+     * @param nanos the latency in nanoseconds, negative values are counted as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts[indexOf(value)]++;
+        totalCount++;
+        totalValue += value;
+        maxValue = Math.max(maxValue, value);
+    }
+
+    /**
+     * Adds every latency counted by another histogram to this one.
+     * @param other the histogram being merged into this one
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        totalValue += other.totalValue;
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    /**
+     * Removes every counted latency.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalValue = 0;
+        maxValue = 0;
+    }
+
+    /**
+     * @return the number of latencies counted
+     */
+    public long getCount() { return this.totalCount; }
+
+    /**
+     * @return the largest latency counted, or 0 if none were counted
+     */
+    public long getMax() { return this.maxValue; }
+
+    /**
+     * @return the average latency counted, or 0 if none were counted
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : totalValue / totalCount;
+    }
+
+    /**
+     * Finds the latency that the given percentage of counted latencies are less than or
+     * equal to, rounded up to the largest value sharing its bucket.
+     * @param percentile a percentage between 0 and 100
+     * @return the latency at the percentile, or 0 if none were counted
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long)Math.ceil(totalCount * Math.min(percentile, 100.0) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * Maps a value to its bucket: values below 2 * SUB_BUCKET_COUNT have a bucket of their own,
+     * larger values keep only their SUB_BUCKET_BITS + 1 highest bits.
+     */
+    private static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int)value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int)(value >>> shift);
+    }
+
+    /**
+     * @return the largest value that is mapped to the bucket at index
+     */
+    private static long highestValueOf(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long mantissa = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Returns a one line summary of the counted latencies in microseconds.
+     * @return the count, mean, common percentiles and maximum
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+            totalCount, getMean() / 1e3, getValueAtPercentile(50) / 1e3, getValueAtPercentile(90) / 1e3,
+            getValueAtPercentile(99) / 1e3, getValueAtPercentile(99.9) / 1e3, maxValue / 1e3);
+    }
+
+    //-----------------------------------------------------------------------------------------------------------------------------//
+    //                                                          TEST METHODS                                                       //
+    //-----------------------------------------------------------------------------------------------------------------------------//
+
+    /**
+     * Tests that small values are counted exactly.
+     * @return true if every percentile of the values 1 to 100 is exact
+     */
+    public static boolean test1() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        return histogram.getValueAtPercentile(50) == 50 && histogram.getValueAtPercentile(99) == 99
+            && histogram.getValueAtPercentile(100) == 100 && histogram.getMean() == 50.5;
+    }
+
+    /**
+     * Tests that large values are reported within the histogram's relative error.
+     * @return true if the percentiles of the values 1 to 1,000,000 (times 1000) are within 1.6%
+     */
+    public static boolean test2() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1_000_000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        double[] percentiles = {10, 50, 90, 99, 99.9};
+        for (double percentile : percentiles) {
+            double expected = percentile * 10_000 * 1000;
+            double actual = histogram.getValueAtPercentile(percentile);
+            if (actual < expected || actual > expected * 1.016) {
+                return false;
+            }
+        }
+        return histogram.getValueAtPercentile(100) == 1_000_000_000L && histogram.getCount() == 1_000_000;
+    }
+
+    /**
+     * Tests that merging two histograms counts the latencies of both.
+     * @return true if the merged histogram has the combined count, maximum and median
+     */
+    public static boolean test3() {
+        LatencyHistogram low = new LatencyHistogram();
+        LatencyHistogram high = new LatencyHistogram();
+        for (int i = 0; i < 100; i++) {
+            low.record(10);
+            high.record(Long.MAX_VALUE);
+        }
+        low.add(high);
+        return low.getCount() == 200 && low.getMax() == Long.MAX_VALUE && low.getValueAtPercentile(50) == 10
+            && low.getValueAtPercentile(51) == Long.MAX_VALUE;
+    }
+
+    public static void main (String[] args) {
+        System.out.println("Test 1: " + test1());
+        System.out.println("Test 2: " + test2());
+        System.out.println("Test 3: " + test3());
+    }
+
+}
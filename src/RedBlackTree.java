@@ -1,3 +1,6 @@
+import java.util.ArrayList;
+import java.util.List;
+
 public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
 
     /**
@@ -37,6 +40,7 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
                 ((RedBlackNode<T>)this.root).flipColor();
             }
         }
+        count++;
     }
 
     /**
@@ -132,7 +136,7 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
      * @param node current node to flip (start with root node)
      * @param newNode node to ignore, pass newly inserted node.
      */
-    private void recolor(RedBlackNode<T> grandparent) {
+    protected void recolor(RedBlackNode<T> grandparent) {
         if (grandparent == null) {
             return;
         }
@@ -153,10 +157,88 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
         }
     }
 
+    /**
+     * Replaces the contents of the tree with the provided values, in linear time. The
+     * new tree is as balanced as possible: every level is full except the deepest one,
+     * whose nodes are red, while every other node is black.
+     * @param sorted the values in ascending order, including duplicates
+     * @throws IllegalArgumentException if the values are not in ascending order
+     */
+    public void buildFromSorted(List<T> sorted) {
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i - 1).compareTo(sorted.get(i)) > 0) {
+                throw new IllegalArgumentException("Values must be in ascending order.");
+            }
+        }
+
+        count = sorted.size();
+        if (sorted.isEmpty()) {
+            root = null;
+            return;
+        }
+
+        int deepestLevel = 31 - Integer.numberOfLeadingZeros(sorted.size());
+        RedBlackNode<T> newRoot = buildSubtree(sorted, 0, sorted.size(), 0, deepestLevel);
+        if (!newRoot.isBlackNode()) {
+            newRoot.flipColor();
+        }
+        root = newRoot;
+    }
+
+    /**
+     * Builds a balanced subtree from sorted.subList(from, to), rooted at its middle value.
+     * @param depth the depth of the subtree's root within the whole tree
+     * @param deepestLevel the depth of the tree's deepest level, whose nodes are red
+     * @return the root of the new subtree, or null if the range is empty
+     */
+    private RedBlackNode<T> buildSubtree(List<T> sorted, int from, int to, int depth, int deepestLevel) {
+        if (from >= to) {
+            return null;
+        }
+
+        int middle = (from + to) >>> 1;
+        RedBlackNode<T> node = new RedBlackNode<>(sorted.get(middle));
+        if (depth != deepestLevel) {
+            node.flipColor();
+        }
+
+        RedBlackNode<T> left = buildSubtree(sorted, from, middle, depth + 1, deepestLevel);
+        RedBlackNode<T> right = buildSubtree(sorted, middle + 1, to, depth + 1, deepestLevel);
+        node.setLeft(left);
+        node.setRight(right);
+        if (left != null) {
+            left.setUp(node);
+        }
+        if (right != null) {
+            right.setUp(node);
+        }
+        return node;
+    }
+
     //-----------------------------------------------------------------------------------------------------------------------------//
     //                                                          TEST METHODS                                                       //
     //-----------------------------------------------------------------------------------------------------------------------------//
 
+    /**
+     * Checks that the subtree rooted at node has no red node with a red child, and that
+     * every path down to a null child passes through the same number of black nodes.
+     * @return the black height of the subtree, or -1 if either property is violated
+     */
+    protected static <T> int blackHeight(RedBlackNode<T> node) {
+        if (node == null) {
+            return 0;
+        }
+        if (!node.isBlackNode() && node.getUp() != null && !node.getUp().isBlackNode()) {
+            return -1;
+        }
+        int left = blackHeight(node.getLeft());
+        int right = blackHeight(node.getRight());
+        if (left < 0 || right < 0 || left != right) {
+            return -1;
+        }
+        return left + (node.isBlackNode() ? 1 : 0);
+    }
+
     /**
      * Tests a RedBlackTree with the insertion order (14, 7, 18, 23).
      * This case was gone over during lecture.
@@ -265,11 +347,47 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
         return true;
     }
     
+    /**
+     * Tests buildFromSorted() with every size from 0 to 300, including duplicate values,
+     * followed by regular inserts into the built tree.
+     * @return true if every built tree is a valid red-black tree holding the provided
+     * values in order, and stays valid after further inserts
+     */
+    public static boolean test5() {
+        for (int size = 0; size <= 300; size++) {
+            List<Integer> sorted = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                sorted.add(i / 3);
+            }
+
+            RedBlackTree<Integer> tree = new RedBlackTree<>();
+            tree.insert(-1);
+            tree.buildFromSorted(sorted);
+            if (blackHeight((RedBlackNode<Integer>)tree.root) < 0 || !tree.range(null, null).equals(sorted)) {
+                return false;
+            }
+
+            tree.insert(size / 2);
+            tree.insert(-5);
+            if (blackHeight((RedBlackNode<Integer>)tree.root) < 0 || tree.size() != size + 2) {
+                return false;
+            }
+        }
+
+        try {
+            new RedBlackTree<Integer>().buildFromSorted(List.of(2, 1));
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
     public static void main (String[] args) {
         System.out.println("Test 1: " + test1() + "\n");
         System.out.println("Test 2: " + test2() + "\n");
         System.out.println("Test 3: " + test3() + "\n");
         System.out.println("Test 4: " + test4() + "\n");
+        System.out.println("Test 5: " + test5() + "\n");
     }
 
 }
@@ -0,0 +1,526 @@
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A RedBlackTree with relaxed balance: insert only attaches the new red node and records
+ * it as a possible red property violation. The recorded violations are repaired later,
+ * a few at a time during lookups, by settle(), or by a background thread, so that a
+ * burst of inserts only pays for attaching its nodes. Applications without a background
+ * thread should call settle() when they are idle.
+ *
+ * Attaching a red node never changes the number of black nodes on any path, and every
+ * repair preserves the ordering of the tree, so lookups stay correct at all times. Once
+ * every recorded violation has been repaired, the tree is a valid red-black tree again.
+ * Inserts only start repairing violations once INSERT_REPAIR_THRESHOLD of them are
+ * outstanding, and repair until there are fewer than MAX_PENDING_REPAIRS, which bounds
+ * how far the tree can drift from balance when repairs fall behind.
+ * Every method locks the tree, so it can be shared between threads.
+ *
+ * Deferring repairs does not shorten the descent that every insert makes, and for
+ * random keys that descent is nearly all of an insert's cost. RelaxedRedBlackTreeBenchmark
+ * accordingly shows about the same insert tail latency as RedBlackTree when the tree is
+ * settled between bursts, and a worse one with the background thread on a single core,
+ * where the thread competes with the inserts for the lock and the CPU.
+ */
+public class RelaxedRedBlackTree<T extends Comparable<T>> extends RedBlackTree<T> implements AutoCloseable {
+
+    // number of recorded violations repaired during each operation, unless configured otherwise
+    public static final int DEFAULT_REPAIRS_PER_OPERATION = 2;
+    // number of violations the background thread repairs before letting other operations in
+    private static final int BACKGROUND_BATCH_SIZE = 32;
+    // number of recorded violations at which inserts repair violations until there are fewer
+    public static final int MAX_PENDING_REPAIRS = 8192;
+    // number of recorded violations at which inserts start repairing repairsPerOperation of them
+    public static final int INSERT_REPAIR_THRESHOLD = MAX_PENDING_REPAIRS / 2;
+
+    // red nodes that may have a red parent
+    protected final ArrayDeque<RedBlackNode<T>> pending = new ArrayDeque<>();
+    // violations whose repair waits for the violation above them, used by repairRedProperty()
+    private final ArrayDeque<RedBlackNode<T>> waitingRepairs = new ArrayDeque<>();
+    protected final ReentrantLock lock = new ReentrantLock();
+    private final Condition violationsPending = lock.newCondition();
+    private final int repairsPerOperation;
+    // repairs violations in the background, or null if they are only repaired by operations
+    private final Thread rebalancer;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates an empty tree that repairs DEFAULT_REPAIRS_PER_OPERATION violations during
+     * every lookup, and during every insert once INSERT_REPAIR_THRESHOLD are outstanding.
+     */
+    public RelaxedRedBlackTree() { this(DEFAULT_REPAIRS_PER_OPERATION, false); }
+
+    /**
+     * Creates an empty tree.
+     * @param repairsPerOperation the number of recorded violations repaired during every
+     * lookup, and during every insert once INSERT_REPAIR_THRESHOLD are outstanding
+     * @param backgroundRebalancing true to also repair violations in a background thread,
+     * which runs until close() is called
+     * @throws IllegalArgumentException if repairsPerOperation is negative, or 0 without
+     * background rebalancing
+     */
+    public RelaxedRedBlackTree(int repairsPerOperation, boolean backgroundRebalancing) {
+        if (repairsPerOperation < 0) {
+            throw new IllegalArgumentException("The number of repairs per operation cannot be negative.");
+        }
+        if (repairsPerOperation == 0 && !backgroundRebalancing) {
+            throw new IllegalArgumentException("Violations must be repaired by operations or by a background thread.");
+        }
+        this.repairsPerOperation = repairsPerOperation;
+
+        if (backgroundRebalancing) {
+            rebalancer = new Thread(this::rebalanceInBackground, "relaxed-red-black-tree-rebalancer");
+            rebalancer.setDaemon(true);
+            rebalancer.start();
+        } else {
+            rebalancer = null;
+        }
+    }
+
+    /**
+     * Attaches a new red node for data and records it as a possible red property violation,
+     * leaving it for later. When the backlog has reached INSERT_REPAIR_THRESHOLD, some of the
+     * previously recorded violations are repaired first.
+     * @param data the new value being inserted
+     * @throws NullPointerException if data argument is null, we do not allow
+     * null values to be stored within a SortedCollection
+     */
+    @Override
+    public void insert(T data) throws NullPointerException {
+        if (data == null) {
+            throw new NullPointerException("Cannot insert a null value.");
+        }
+
+        lock.lock();
+        try {
+            // Leave repairs to lookups, settle() and the background thread while the backlog is
+            // small. Otherwise repair older violations first, so the new node's repair is deferred.
+            if (pending.size() >= INSERT_REPAIR_THRESHOLD) {
+                repair(repairsPerOperation);
+            }
+            while (pending.size() >= MAX_PENDING_REPAIRS) {
+                repair(pending.size() - MAX_PENDING_REPAIRS + 1);
+            }
+
+            RedBlackNode<T> newNode = new RedBlackNode<>(data);
+            if (root == null) {
+                newNode.flipColor();
+                root = newNode;
+            } else {
+                insertHelper(newNode, root);
+                pending.add(newNode);
+                if (rebalancer != null && pending.size() == 1) {
+                    violationsPending.signal();
+                }
+            }
+            count++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Attaches newNode below subtree with a loop instead of recursion, since the tree can
+     * be deeper than a red-black tree while violations are outstanding.
+     */
+    @Override
+    protected void insertHelper(BinaryNode<T> newNode, BinaryNode<T> subtree) {
+        while (subtree != null) {
+            if (newNode.getData().compareTo(subtree.getData()) <= 0) {
+                if (subtree.getLeft() == null) {
+                    subtree.setLeft(newNode);
+                    newNode.setUp(subtree);
+                    return;
+                }
+                subtree = subtree.getLeft();
+            } else {
+                if (subtree.getRight() == null) {
+                    subtree.setRight(newNode);
+                    newNode.setUp(subtree);
+                    return;
+                }
+                subtree = subtree.getRight();
+            }
+        }
+    }
+
+    /**
+     * Repairs up to count recorded violations. Must be called while holding the lock.
+     */
+    private void repair(int count) {
+        for (int i = 0; i < count && !pending.isEmpty(); i++) {
+            repairRedProperty(pending.poll());
+        }
+    }
+
+    /**
+     * Repairs the red property violation between node and its parent, if there is one.
+     * Unlike ensureRedProperty(), this works while other violations are still outstanding:
+     * a violation directly above the parent is repaired first, and red nodes that get
+     * moved below a red node by a rotation are recorded as new violations.
+     * @param node a red node that may have a red parent
+     */
+    protected void repairRedProperty(RedBlackNode<T> node) {
+        while (node != null) {
+            RedBlackNode<T> parent = node.getUp();
+            if (node.isBlackNode() || parent == null || parent.isBlackNode()) {
+                // This violation is gone, resume the one waiting below it, if any.
+                node = waitingRepairs.poll();
+                continue;
+            }
+
+            RedBlackNode<T> grandparent = parent.getUp();
+            if (grandparent == null) {
+                // A red root can always be turned black.
+                parent.flipColor();
+                node = waitingRepairs.poll();
+                continue;
+            }
+            if (!grandparent.isBlackNode()) {
+                // Repair the violation above first, so that the grandparent is black. This uses
+                // a stack instead of recursion, since a backlog can leave long chains of red nodes.
+                waitingRepairs.push(node);
+                node = parent;
+                continue;
+            }
+
+            RedBlackNode<T> aunt = (grandparent.getLeft() == parent) ? grandparent.getRight() : grandparent.getLeft();
+            if (aunt != null && !aunt.isBlackNode()) {
+                // Aunt is red: recolor, and check the grandparent against its own parent next.
+                recolor(grandparent);
+                node = grandparent;
+                continue;
+            }
+
+            // Aunt is black or null: rotate the middle value up over the grandparent.
+            RedBlackNode<T> promoted;
+            if ((grandparent.getLeft() == parent) != (parent.getLeft() == node)) {
+                this.rotate(node, parent);
+                this.rotate(node, grandparent);
+                promoted = node;
+            } else {
+                this.rotate(parent, grandparent);
+                promoted = parent;
+            }
+            if (!promoted.isBlackNode()) {
+                promoted.flipColor();
+            }
+            if (grandparent.isBlackNode()) {
+                grandparent.flipColor();
+            }
+
+            // The rotation may have moved red nodes with deferred violations below red nodes.
+            recordRedChildren(promoted.getLeft());
+            recordRedChildren(promoted.getRight());
+            node = waitingRepairs.poll();
+        }
+
+        RedBlackNode<T> redBlackRoot = (RedBlackNode<T>)this.root;
+        if (!redBlackRoot.isBlackNode()) {
+            redBlackRoot.flipColor();
+        }
+    }
+
+    /**
+     * Records the red children of node as violations, when node itself is red.
+     */
+    private void recordRedChildren(RedBlackNode<T> node) {
+        if (node == null || node.isBlackNode()) {
+            return;
+        }
+        if (node.getLeft() != null && !node.getLeft().isBlackNode()) {
+            pending.add(node.getLeft());
+        }
+        if (node.getRight() != null && !node.getRight().isBlackNode()) {
+            pending.add(node.getRight());
+        }
+    }
+
+    /**
+     * Repairs violations in batches until close() is called, waiting while there are none.
+     */
+    private void rebalanceInBackground() {
+        while (!closed) {
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) {
+                    violationsPending.await();
+                }
+                repair(BACKGROUND_BATCH_SIZE);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Repairs every recorded violation, so that the tree is a valid red-black tree.
+     */
+    public void settle() {
+        lock.lock();
+        try {
+            repair(Integer.MAX_VALUE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of recorded violations that have not been repaired yet
+     */
+    public int pendingRepairs() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Repairs some of the recorded violations, then checks whether data is stored in the
+     * tree, descending with a loop instead of recursion.
+     * @param find the value to check for in the collection
+     * @return true if the collection contains data one or more times,
+     * and false otherwise
+     */
+    @Override
+    public boolean contains(Comparable<T> find) {
+        lock.lock();
+        try {
+            repair(repairsPerOperation);
+
+            BinaryNode<T> subtree = root;
+            while (subtree != null) {
+                int comparison = find.compareTo(subtree.getData());
+                if (comparison == 0) {
+                    return true;
+                }
+                subtree = (comparison < 0) ? subtree.getLeft() : subtree.getRight();
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<T> range(Comparable<T> low, Comparable<T> high) {
+        lock.lock();
+        try {
+            return super.range(low, high);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates a Spliterator over a copy of the values, since the tree may be changed by
+     * other threads or the background thread while the Spliterator is in use.
+     * @return a Spliterator over every value in sorted order
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return Spliterators.spliterator(range(null, null).toArray(),
+            Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return super.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return super.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            super.clear();
+            pending.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Repairs every recorded violation before building the level-order string.
+     */
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            repair(Integer.MAX_VALUE);
+            return super.toString();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the background thread, if there is one. The tree stays usable, and
+     * violations are still repaired by later operations and settle().
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            violationsPending.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //-----------------------------------------------------------------------------------------------------------------------------//
+    //                                                          TEST METHODS                                                       //
+    //-----------------------------------------------------------------------------------------------------------------------------//
+
+    /**
+     * Computes the number of nodes on the longest path from node down to a null child.
+     */
+    protected static <T> int height(BinaryNode<T> node) {
+        if (node == null) {
+            return 0;
+        }
+        return 1 + Math.max(height(node.getLeft()), height(node.getRight()));
+    }
+
+    /**
+     * Tests the lecture example (14, 7, 18, 23, 1, 11, 20, 29, 25, 27) with the default
+     * number of repairs per operation, which leaves every repair of a short burst of
+     * inserts to later lookups and settle().
+     * @return true if every insert but the first is still waiting to be repaired, lookups
+     * repair some of them, and the settled tree is a valid red-black tree with the same
+     * values as RedBlackTree
+     */
+    public static boolean test1() {
+        RelaxedRedBlackTree<Integer> tree = new RelaxedRedBlackTree<>();
+        RedBlackTree<Integer> expected = new RedBlackTree<>();
+
+        for (int dataPoint : new int[] {14, 7, 18, 23, 1, 11, 20, 29, 25, 27}) {
+            tree.insert(dataPoint);
+            expected.insert(dataPoint);
+        }
+        if (tree.pendingRepairs() != 9 || !tree.contains(27) || tree.pendingRepairs() >= 9) {
+            return false;
+        }
+
+        tree.settle();
+        return tree.pendingRepairs() == 0 && blackHeight((RedBlackNode<Integer>)tree.root) > 0
+            && tree.range(null, null).equals(expected.range(null, null));
+    }
+
+    /**
+     * Tests that lookups are correct while a single repair runs per operation, and that the
+     * tree is a valid red-black tree once it settles.
+     * @return true if a tree that would never repair anything is rejected, every value is
+     * found before settling, and both red-black properties hold and the height is at most
+     * 2 * log2(n + 1) after settling
+     */
+    public static boolean test2() {
+        try {
+            new RelaxedRedBlackTree<Integer>(0, false);
+            return false;
+        } catch (IllegalArgumentException e) {
+            // Expected: nothing would ever repair the tree.
+        }
+
+        RelaxedRedBlackTree<Integer> tree = new RelaxedRedBlackTree<>(1, false);
+
+        int count = 10_000;
+        for (int i = 0; i < count; i++) {
+            tree.insert((i * 7919) % count);
+        }
+        for (int i = 0; i < count; i++) {
+            if (!tree.contains(i)) {
+                return false;
+            }
+        }
+
+        tree.settle();
+        int maxHeight = (int)(2 * Math.log(count + 1) / Math.log(2));
+        return blackHeight((RedBlackNode<Integer>)tree.root) > 0 && height(tree.root) <= maxHeight
+            && tree.range(null, null).size() == count && tree.range(100, 102).equals(List.of(100, 101, 102));
+    }
+
+    /**
+     * Tests ascending inserts, the worst case for an unbalanced tree, repaired by the
+     * background thread while the values are being looked up.
+     * @return true if every value is found and the settled tree is a valid red-black tree
+     */
+    public static boolean test3() {
+        try (RelaxedRedBlackTree<Integer> tree = new RelaxedRedBlackTree<>(0, true)) {
+            int count = 20_000;
+            for (int i = 0; i < count; i++) {
+                tree.insert(i);
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                if (!tree.contains(i)) {
+                    return false;
+                }
+            }
+
+            tree.settle();
+            int maxHeight = (int)(2 * Math.log(count + 1) / Math.log(2));
+            return tree.size() == count && blackHeight((RedBlackNode<Integer>)tree.root) > 0
+                && height(tree.root) <= maxHeight;
+        }
+    }
+
+    /**
+     * Tests ascending inserts after the background thread has been stopped, so that only
+     * the bound on outstanding violations keeps the tree from turning into a linked list.
+     * @return true if the backlog never exceeds MAX_PENDING_REPAIRS, every value is found,
+     * and the settled tree is a valid red-black tree
+     */
+    public static boolean test4() {
+        RelaxedRedBlackTree<Integer> tree = new RelaxedRedBlackTree<>(0, true);
+        tree.close();
+
+        int count = 100_000;
+        for (int i = 0; i < count; i++) {
+            tree.insert(i);
+            if (tree.pending.size() > MAX_PENDING_REPAIRS) {
+                return false;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (!tree.contains(i)) {
+                return false;
+            }
+        }
+
+        tree.settle();
+        int maxHeight = (int)(2 * Math.log(count + 1) / Math.log(2));
+        return tree.size() == count && blackHeight((RedBlackNode<Integer>)tree.root) > 0
+            && height(tree.root) <= maxHeight;
+    }
+
+    public static void main (String[] args) {
+        System.out.println("Test 1: " + test1());
+        System.out.println("Test 2: " + test2());
+        System.out.println("Test 3: " + test3());
+        System.out.println("Test 4: " + test4());
+    }
+
+}
@@ -0,0 +1,64 @@
+import java.util.Random;
+
+/**
+ * Compares insert latency under bursts of inserts for RedBlackTree, which repairs every
+ * insert right away, and RelaxedRedBlackTree, which defers repairs to later operations
+ * or to a background thread. Each burst inserts random values back to back, followed by
+ * a pause in which the background thread can catch up. Without a background thread,
+ * the relaxed tree is settled during the pause instead, the way an application would
+ * settle it when idle.
+ */
+public class RelaxedRedBlackTreeBenchmark {
+
+    private static final int BURSTS = 250;
+    // small enough for a whole burst to be deferred, see RelaxedRedBlackTree.INSERT_REPAIR_THRESHOLD
+    private static final int INSERTS_PER_BURST = 4_000;
+    private static final long PAUSE_MILLIS = 5;
+    // bursts run before measuring, so that the JIT compiler has warmed up
+    private static final int WARMUP_BURSTS = 50;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("Eager repairs (RedBlackTree):");
+        System.out.println("  " + run(new RedBlackTree<>(), false));
+
+        System.out.println("Relaxed, " + RelaxedRedBlackTree.DEFAULT_REPAIRS_PER_OPERATION + " repairs per operation, settled between bursts:");
+        System.out.println("  " + run(new RelaxedRedBlackTree<>(), true));
+
+        System.out.println("Relaxed, background thread only:");
+        try (RelaxedRedBlackTree<Integer> tree = new RelaxedRedBlackTree<>(0, true)) {
+            System.out.println("  " + run(tree, false));
+        }
+    }
+
+    /**
+     * Inserts every burst into tree and measures the latency of each insert.
+     * @param settleWhenIdle true to settle the relaxed tree during every pause
+     * @return the latencies, followed by the height of the tree once it has settled
+     */
+    private static String run(RedBlackTree<Integer> tree, boolean settleWhenIdle) throws InterruptedException {
+        LatencyHistogram latencies = new LatencyHistogram();
+        Random random = new Random(42);
+
+        for (int burst = 0; burst < WARMUP_BURSTS + BURSTS; burst++) {
+            if (burst == WARMUP_BURSTS) {
+                latencies.reset();
+            }
+            for (int i = 0; i < INSERTS_PER_BURST; i++) {
+                int value = random.nextInt();
+                long start = System.nanoTime();
+                tree.insert(value);
+                latencies.record(System.nanoTime() - start);
+            }
+            if (settleWhenIdle) {
+                ((RelaxedRedBlackTree<Integer>)tree).settle();
+            }
+            Thread.sleep(PAUSE_MILLIS);
+        }
+
+        if (tree instanceof RelaxedRedBlackTree) {
+            ((RelaxedRedBlackTree<Integer>)tree).settle();
+        }
+        return latencies + ", settled height=" + RelaxedRedBlackTree.height(tree.root);
+    }
+
+}
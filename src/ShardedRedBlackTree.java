@@ -0,0 +1,652 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread-safe SortedCollection that splits its values by range across several
+ * independently locked RedBlackTree shards, so that inserts into different ranges do
+ * not wait for each other. Shard i holds the values that are at least split point
+ * i - 1 and less than split point i.
+ *
+ * When one shard grows much larger than the average shard, it is split in two at its
+ * median, and the two adjacent shards with the fewest values are merged to keep the
+ * number of shards constant. Only the shards being replaced are locked, and the new
+ * shards are built from their sorted values in linear time. The replaced shards are then
+ * marked as retired, and operations that were waiting on them retry against the new shards.
+ */
+public class ShardedRedBlackTree<T extends Comparable<T>> implements SortedCollection<T>, Iterable<T> {
+
+    // no shard is rebalanced before it holds this many values, after which a shard checks
+    // whether it has become skewed every time it grows by a quarter
+    public static final int MIN_REBALANCE_SIZE = 1024;
+    // a shard is rebalanced when it holds this many times the average number of values
+    public static final double SKEW_FACTOR = 2.0;
+
+    /**
+     * A single RedBlackTree together with its lock and the number of values it holds.
+     */
+    protected static class Shard<T extends Comparable<T>> {
+
+        protected final RedBlackTree<T> tree = new RedBlackTree<>();
+        protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // written while holding the write lock, read without any lock by size()
+        protected volatile int size = 0;
+        // set while holding the write lock once the shard has been replaced
+        protected boolean retired = false;
+        // size at which this shard next checks whether it has become skewed
+        protected int rebalanceCheckSize = MIN_REBALANCE_SIZE;
+
+    }
+
+    /**
+     * The split points and the shards between them. A layout is never changed once it
+     * has been published, rebalancing and clearing publish a new one instead.
+     */
+    protected static class Layout<T extends Comparable<T>> {
+
+        protected final T[] splitPoints;
+        protected final Shard<T>[] shards;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        protected Layout(T[] splitPoints) {
+            this.splitPoints = splitPoints;
+            this.shards = (Shard<T>[])new Shard[splitPoints.length + 1];
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = new Shard<>();
+            }
+        }
+
+        protected Layout(T[] splitPoints, Shard<T>[] shards) {
+            this.splitPoints = splitPoints;
+            this.shards = shards;
+        }
+
+        /**
+         * Finds the shard that holds data, which is the number of split points less than
+         * or equal to data.
+         * @param data the value being located, or null for the first shard
+         * @return the index of the shard in shards
+         */
+        protected int shardIndexOf(Comparable<T> data) {
+            if (data == null) {
+                return 0;
+            }
+            int low = 0;
+            int high = splitPoints.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (data.compareTo(splitPoints[middle]) >= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+    }
+
+    // the number of shards the values are split into once rebalanced
+    protected final int shardCount;
+    protected volatile Layout<T> layout;
+    // makes sure that only one thread rebalances or clears the shards at a time
+    private final Object layoutChange = new Object();
+
+    /**
+     * Creates an empty collection that picks its split points by sampling the first
+     * MIN_REBALANCE_SIZE values inserted.
+     * @param shardCount the number of shards to split the values into
+     * @throws IllegalArgumentException if shardCount is less than 1
+     */
+    public ShardedRedBlackTree(int shardCount) {
+        this(shardCount, Collections.emptyList());
+    }
+
+    /**
+     * Creates an empty collection whose split points divide a sample of the expected
+     * values into shardCount equally sized parts.
+     * @param shardCount the number of shards to split the values into
+     * @param sample values representative of the ones that will be inserted
+     * @throws IllegalArgumentException if shardCount is less than 1
+     */
+    public ShardedRedBlackTree(int shardCount, Collection<T> sample) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("There must be at least one shard.");
+        }
+        List<T> sorted = new ArrayList<>(sample);
+        Collections.sort(sorted);
+        this.shardCount = shardCount;
+        this.layout = new Layout<>(splitPointsOf(sorted, sorted.isEmpty() ? 1 : shardCount));
+    }
+
+    /**
+     * Creates an empty collection with the provided split points, which results in
+     * splitPoints.size() + 1 shards.
+     * @param splitPoints the values at which each new shard starts, in ascending order
+     * @throws IllegalArgumentException if the split points are not in ascending order
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ShardedRedBlackTree(List<T> splitPoints) {
+        T[] points = (T[])splitPoints.toArray(new Comparable[0]);
+        for (int i = 1; i < points.length; i++) {
+            if (points[i - 1].compareTo(points[i]) > 0) {
+                throw new IllegalArgumentException("Split points must be in ascending order.");
+            }
+        }
+        this.shardCount = points.length + 1;
+        this.layout = new Layout<>(points);
+    }
+
+    /**
+     * Picks the split points that divide the sorted values into the given number of equally sized parts.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T extends Comparable<T>> T[] splitPointsOf(List<T> sorted, int parts) {
+        T[] points = (T[])new Comparable[sorted.isEmpty() ? 0 : parts - 1];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = sorted.get((int)((long)(i + 1) * sorted.size() / parts));
+        }
+        return points;
+    }
+
+    /**
+     * Inserts a new data value into the shard covering its range.
+     * @param data the new value being inserted
+     * @throws NullPointerException if data argument is null, we do not allow
+     * null values to be stored within a SortedCollection
+     */
+    @Override
+    public void insert(T data) throws NullPointerException {
+        if (data == null) {
+            throw new NullPointerException("Cannot insert a null value.");
+        }
+
+        boolean checkSkew = false;
+        while (true) {
+            Layout<T> current = layout;
+            Shard<T> shard = current.shards[current.shardIndexOf(data)];
+            shard.lock.writeLock().lock();
+            try {
+                if (shard.retired) {
+                    continue;
+                }
+                shard.tree.insert(data);
+                shard.size++;
+                if (shard.size >= shard.rebalanceCheckSize) {
+                    shard.rebalanceCheckSize += shard.rebalanceCheckSize / 4;
+                    checkSkew = true;
+                }
+                break;
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+        }
+
+        if (checkSkew) {
+            rebalanceIfSkewed();
+        }
+    }
+
+    /**
+     * Check whether data is stored in the shard covering its range.
+     * @param find the value to check for in the collection
+     * @return true if the collection contains data one or more times,
+     * and false otherwise
+     */
+    @Override
+    public boolean contains(Comparable<T> find) {
+        while (true) {
+            Layout<T> current = layout;
+            Shard<T> shard = current.shards[current.shardIndexOf(find)];
+            shard.lock.readLock().lock();
+            try {
+                if (!shard.retired) {
+                    return shard.tree.contains(find);
+                }
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Collects every value between low and high (both inclusive) in sorted order, from
+     * a consistent snapshot of the shards covering the range.
+     * @param low the smallest value to include, or null for no lower bound
+     * @param high the largest value to include, or null for no upper bound
+     * @return a list of the values within the range, including duplicates
+     */
+    public List<T> range(Comparable<T> low, Comparable<T> high) {
+        while (true) {
+            Layout<T> current = layout;
+            int first = current.shardIndexOf(low);
+            int last = (high == null) ? current.shards.length - 1 : current.shardIndexOf(high);
+
+            // Shards are always locked in ascending order, so this cannot deadlock with a rebalance.
+            int locked = first;
+            boolean retired = false;
+            try {
+                for (; locked <= last && !retired; locked++) {
+                    current.shards[locked].lock.readLock().lock();
+                    retired = current.shards[locked].retired;
+                }
+                if (!retired) {
+                    List<T> values = new ArrayList<>();
+                    for (int i = first; i <= last; i++) {
+                        values.addAll(current.shards[i].tree.range(low, high));
+                    }
+                    return values;
+                }
+            } finally {
+                for (int i = first; i < locked; i++) {
+                    current.shards[i].lock.readLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns an iterator over every value in ascending order. Each shard is copied when
+     * the iterator reaches it, so values inserted into shards that were already visited,
+     * or while the shards are being rebalanced, may not be returned.
+     * @return an iterator over the values of the collection in sorted order
+     */
+    @Override
+    public Iterator<T> iterator() {
+        Layout<T> current = layout;
+
+        return new Iterator<T>() {
+            private int nextShard = 0;
+            private Iterator<T> values = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!values.hasNext() && nextShard < current.shards.length) {
+                    Shard<T> shard = current.shards[nextShard++];
+                    shard.lock.readLock().lock();
+                    try {
+                        values = shard.tree.range(null, null).iterator();
+                    } finally {
+                        shard.lock.readLock().unlock();
+                    }
+                }
+                return values.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return values.next();
+            }
+        };
+    }
+
+    /**
+     * Creates a Spliterator over a consistent copy of every value, since the shards may be
+     * changed by other threads while the Spliterator is in use.
+     * @return a Spliterator over every value in sorted order
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return Spliterators.spliterator(range(null, null).toArray(),
+            Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+    }
+
+    /**
+     * Splits the largest shard in two when there are fewer than shardCount shards, or when
+     * it holds more than SKEW_FACTOR times the average number of values. To keep the number
+     * of shards constant, the two adjacent shards with the fewest values are merged, as long
+     * as they hold at most half as many values as the largest shard. Otherwise, the split
+     * point between the largest shard and its smaller neighbour is moved instead. Only the
+     * shards being replaced are locked while their values are copied.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected void rebalanceIfSkewed() {
+        synchronized (layoutChange) {
+            Layout<T> current = layout;
+            Shard<T>[] shards = current.shards;
+
+            int total = 0;
+            int skewed = 0;
+            for (int i = 0; i < shards.length; i++) {
+                total += shards[i].size;
+                if (shards[i].size > shards[skewed].size) {
+                    skewed = i;
+                }
+            }
+            int largest = shards[skewed].size;
+            boolean addShard = shards.length < shardCount;
+            if (!addShard && largest <= SKEW_FACTOR * total / shardCount) {
+                return;
+            }
+
+            // first of the two adjacent shards merged into one, or -1
+            int merged = -1;
+            // first of the two adjacent shards whose shared split point is moved, or -1
+            int moved = -1;
+            if (!addShard) {
+                for (int i = 0; i + 1 < shards.length; i++) {
+                    if (i != skewed && i + 1 != skewed && (merged < 0
+                            || shards[i].size + shards[i + 1].size < shards[merged].size + shards[merged + 1].size)) {
+                        merged = i;
+                    }
+                }
+                if (merged < 0 || shards[merged].size + shards[merged + 1].size > largest / 2) {
+                    merged = -1;
+                    boolean rightIsSmaller = skewed + 1 < shards.length
+                        && (skewed == 0 || shards[skewed + 1].size < shards[skewed - 1].size);
+                    moved = rightIsSmaller ? skewed : skewed - 1;
+                }
+            }
+
+            List<Integer> involved = new ArrayList<>();
+            if (moved >= 0) {
+                involved.add(moved);
+                involved.add(moved + 1);
+            } else {
+                involved.add(skewed);
+                if (merged >= 0) {
+                    involved.add(merged);
+                    involved.add(merged + 1);
+                }
+            }
+            Collections.sort(involved);
+
+            // Shards are always locked in ascending order, so this cannot deadlock with range().
+            for (int i : involved) {
+                shards[i].lock.writeLock().lock();
+            }
+            boolean replaced = false;
+            try {
+                List<Shard<T>> nextShards = new ArrayList<>(Arrays.asList(shards));
+                List<T> nextPoints = new ArrayList<>(Arrays.asList(current.splitPoints));
+
+                if (moved >= 0) {
+                    List<T> values = shards[moved].tree.range(null, null);
+                    values.addAll(shards[moved + 1].tree.range(null, null));
+                    int cut = splitIndexOf(values);
+                    if (cut < 0) {
+                        return;
+                    }
+                    nextShards.set(moved, newShard(values.subList(0, cut)));
+                    nextShards.set(moved + 1, newShard(values.subList(cut, values.size())));
+                    nextPoints.set(moved, values.get(cut));
+                } else {
+                    List<T> values = shards[skewed].tree.range(null, null);
+                    int cut = splitIndexOf(values);
+                    if (cut < 0) {
+                        return;
+                    }
+                    nextShards.set(skewed, newShard(values.subList(0, cut)));
+                    nextShards.add(skewed + 1, newShard(values.subList(cut, values.size())));
+                    nextPoints.add(skewed, values.get(cut));
+
+                    if (merged >= 0) {
+                        int at = (merged > skewed) ? merged + 1 : merged;
+                        List<T> pair = shards[merged].tree.range(null, null);
+                        pair.addAll(shards[merged + 1].tree.range(null, null));
+                        nextShards.set(at, newShard(pair));
+                        nextShards.remove(at + 1);
+                        nextPoints.remove(at);
+                    }
+                }
+
+                layout = new Layout<>((T[])nextPoints.toArray(new Comparable[0]), nextShards.toArray(new Shard[0]));
+                replaced = true;
+            } finally {
+                for (int i : involved) {
+                    shards[i].retired = replaced;
+                    shards[i].lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks where to split sorted values in two, as close to the middle as possible
+     * without separating equal values.
+     * @return the index of the first value of the second half, or -1 if every value is equal
+     */
+    private static <T extends Comparable<T>> int splitIndexOf(List<T> sorted) {
+        if (sorted.isEmpty()) {
+            return -1;
+        }
+        int middle = sorted.size() / 2;
+        T value = sorted.get(middle);
+
+        int cut = middle;
+        while (cut > 0 && sorted.get(cut - 1).compareTo(value) == 0) {
+            cut--;
+        }
+        if (cut == 0) {
+            cut = middle + 1;
+            while (cut < sorted.size() && sorted.get(cut).compareTo(value) == 0) {
+                cut++;
+            }
+        }
+        return (cut < sorted.size()) ? cut : -1;
+    }
+
+    /**
+     * Creates a shard holding the provided values.
+     * @param sorted the values in ascending order
+     */
+    private static <T extends Comparable<T>> Shard<T> newShard(List<T> sorted) {
+        Shard<T> shard = new Shard<>();
+        shard.tree.buildFromSorted(sorted);
+        shard.size = sorted.size();
+        shard.rebalanceCheckSize = Math.max(MIN_REBALANCE_SIZE, shard.size + shard.size / 4);
+        return shard;
+    }
+
+    /**
+     * Write-locks every shard of layout in ascending order.
+     */
+    private static <T extends Comparable<T>> void lockAll(Layout<T> layout) {
+        for (Shard<T> shard : layout.shards) {
+            shard.lock.writeLock().lock();
+        }
+    }
+
+    /**
+     * Marks every shard of layout as retired and releases the locks taken by lockAll().
+     */
+    private static <T extends Comparable<T>> void retireAndUnlockAll(Layout<T> layout) {
+        for (Shard<T> shard : layout.shards) {
+            shard.retired = true;
+            shard.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the number of values in all shards, with each duplicate value
+     * being counted separately within the value returned.
+     * @return the number of values in the collection, including duplicates
+     */
+    @Override
+    public int size() {
+        int total = 0;
+        for (Shard<T> shard : layout.shards) {
+            total += shard.size;
+        }
+        return total;
+    }
+
+    /**
+     * Checks if the collection is empty.
+     * @return true if the collection contains 0 values, false otherwise
+     */
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes all values by replacing every shard with an empty one, keeping the split points.
+     */
+    @Override
+    public void clear() {
+        synchronized (layoutChange) {
+            Layout<T> current = layout;
+            lockAll(current);
+            try {
+                layout = new Layout<>(current.splitPoints);
+            } finally {
+                retireAndUnlockAll(current);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Shards split at " + Arrays.toString(layout.splitPoints) + ", holding " + size() + " values";
+    }
+
+    //-----------------------------------------------------------------------------------------------------------------------------//
+    //                                                          TEST METHODS                                                       //
+    //-----------------------------------------------------------------------------------------------------------------------------//
+
+    /**
+     * Tests routing with explicit split points, including values equal to a split point.
+     * @return true if every value lands in the expected shard and ranges cross shards in order
+     */
+    public static boolean test1() {
+        ShardedRedBlackTree<Integer> tree = new ShardedRedBlackTree<>(List.of(10, 20));
+
+        for (int dataPoint : new int[] {14, 7, 18, 23, 1, 11, 20, 29, 25, 27, 10}) {
+            tree.insert(dataPoint);
+        }
+
+        Layout<Integer> layout = tree.layout;
+        if (layout.shards[0].size != 2 || layout.shards[1].size != 4 || layout.shards[2].size != 5) {
+            return false;
+        }
+
+        List<Integer> all = new ArrayList<>();
+        tree.forEach(all::add);
+
+        return tree.size() == 11 && tree.contains(10) && !tree.contains(12)
+            && all.equals(List.of(1, 7, 10, 11, 14, 18, 20, 23, 25, 27, 29))
+            && tree.range(9, 21).equals(List.of(10, 11, 14, 18, 20))
+            && tree.range(null, 9).equals(List.of(1, 7));
+    }
+
+    /**
+     * Tests that ascending inserts, which all land in the last shard, trigger rebalancing,
+     * and that no value is lost along the way.
+     * @return true if the shards end up balanced and hold every inserted value in order
+     */
+    public static boolean test2() {
+        ShardedRedBlackTree<Integer> tree = new ShardedRedBlackTree<>(4);
+
+        int count = 20_000;
+        for (int i = 0; i < count; i++) {
+            tree.insert(i);
+        }
+
+        Layout<Integer> layout = tree.layout;
+        if (layout.shards.length != 4 || tree.size() != count) {
+            return false;
+        }
+        for (Shard<Integer> shard : layout.shards) {
+            if (shard.size > SKEW_FACTOR * count / 4) {
+                return false;
+            }
+        }
+
+        int expected = 0;
+        for (int value : tree) {
+            if (value != expected++) {
+                return false;
+            }
+        }
+        return expected == count && tree.contains(count - 1);
+    }
+
+    /**
+     * Tests concurrent inserts from several threads while shards are being rebalanced.
+     * @return true if every value inserted by every thread is found afterwards
+     */
+    public static boolean test3() {
+        ShardedRedBlackTree<Integer> tree = new ShardedRedBlackTree<>(8);
+        int threads = 4;
+        int perThread = 10_000;
+
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    tree.insert(i * threads + offset);
+                }
+            });
+            writers[t].start();
+        }
+        try {
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        } catch (InterruptedException e) {
+            return false;
+        }
+
+        List<Integer> values = tree.range(null, null);
+        for (int i = 0; i < threads * perThread; i++) {
+            if (values.get(i) != i) {
+                return false;
+            }
+        }
+        tree.clear();
+        return values.size() == threads * perThread && tree.isEmpty() && !tree.contains(0);
+    }
+
+    /**
+     * Tests that rebalancing a skewed shard only replaces the shards involved: the skewed
+     * last shard is split, and the two small shards at the start are merged.
+     * @return true if the shard in between is left in place, and every value is still
+     * found in order afterwards
+     */
+    public static boolean test4() {
+        ShardedRedBlackTree<Integer> tree = new ShardedRedBlackTree<>(List.of(100, 200, 300));
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(i);
+            expected.add(100 + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            expected.add(200 + i % 100);
+        }
+        for (int value : expected) {
+            tree.insert(value);
+        }
+        Shard<Integer> untouched = tree.layout.shards[2];
+
+        for (int i = 0; i < 1280; i++) {
+            tree.insert(300 + i);
+            expected.add(300 + i);
+        }
+        expected.sort(null);
+
+        Layout<Integer> layout = tree.layout;
+        return layout.shards.length == 4 && layout.shards[1] == untouched && !untouched.retired
+            && tree.toString().startsWith("Shards split at [200, 300, 940]") && layout.shards[3].size == 640
+            && tree.range(null, null).equals(expected) && tree.contains(299) && tree.contains(1579);
+    }
+
+    public static void main (String[] args) {
+        System.out.println("Test 1: " + test1());
+        System.out.println("Test 2: " + test2());
+        System.out.println("Test 3: " + test3());
+        System.out.println("Test 4: " + test4());
+    }
+
+}
@@ -0,0 +1,76 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how insert throughput scales with the number of writer threads, for a
+ * single RedBlackTree guarded by one lock, and for a ShardedRedBlackTree with one
+ * shard per writer thread. Every writer inserts uniformly distributed random values.
+ */
+public class ShardedRedBlackTreeBenchmark {
+
+    // number of values inserted by every writer thread
+    private static final int INSERTS_PER_THREAD = 500_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(cores + " available processors");
+        System.out.printf("%8s %22s %22s%n", "threads", "locked tree (ops/sec)", "sharded (ops/sec)");
+
+        for (int threads = 1; threads <= Math.max(8, cores); threads *= 2) {
+            RedBlackTree<Integer> single = new RedBlackTree<>();
+            double locked = run(threads, value -> {
+                synchronized (single) {
+                    single.insert(value);
+                }
+            });
+
+            // Sample split points from the same distribution as the inserted values.
+            Random random = new Random(-1);
+            List<Integer> sample = new ArrayList<>();
+            for (int i = 0; i < 10_000; i++) {
+                sample.add(random.nextInt());
+            }
+            ShardedRedBlackTree<Integer> sharded = new ShardedRedBlackTree<>(threads, sample);
+            double shardedThroughput = run(threads, sharded::insert);
+
+            System.out.printf("%8d %22.0f %22.0f%n", threads, locked, shardedThroughput);
+        }
+    }
+
+    /**
+     * An operation applied to every generated value.
+     */
+    private interface Insert {
+        void apply(int value);
+    }
+
+    /**
+     * Starts the writer threads and waits for all of them to finish.
+     * @return the number of inserts per second across all threads
+     */
+    private static double run(int threads, Insert insert) throws InterruptedException {
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            writers[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < INSERTS_PER_THREAD; i++) {
+                    insert.apply(random.nextInt());
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        return (double)threads * INSERTS_PER_THREAD / (elapsed / 1e9);
+    }
+
+}
@@ -1,3 +1,7 @@
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * This interface defines an ADT for data structures that support storing a
  * collection of comparable values in their natural ordering.
@@ -38,4 +42,26 @@ public interface SortedCollection<T extends Comparable<T>> {
      */
     public void clear();
 
+    /**
+     * Creates a Spliterator over the values in the collection in their natural ordering.
+     * @return a Spliterator reporting at least the ORDERED and SORTED characteristics
+     */
+    public Spliterator<T> spliterator();
+
+    /**
+     * Returns a sequential stream of the values in the collection in sorted order.
+     * @return a stream over the collection's values, including duplicates
+     */
+    public default Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel stream of the values in the collection in sorted order.
+     * @return a possibly parallel stream over the collection's values, including duplicates
+     */
+    public default Stream<T> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
 }
\ No newline at end of file
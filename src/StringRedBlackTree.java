@@ -0,0 +1,196 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * A RedBlackTree for strings that skips over prefixes already known to be shared with
+ * the value being searched for. While descending, it remembers how many leading characters
+ * the search value shares with the closest smaller and closest larger ancestor. Every node
+ * below lies between those two ancestors in sorted order, so it must share at least the
+ * shorter of those two prefixes with the search value as well, and the comparison can
+ * start after it. For long keys with shared prefixes, such as URLs, this avoids rescanning
+ * the same prefix at every level of the tree.
+ */
+public class StringRedBlackTree extends RedBlackTree<String> {
+
+    /**
+     * Inserts newNode into the subtree rooted at subtree, comparing each node's value
+     * only from the first character not known to be shared with newNode's value.
+     */
+    @Override
+    protected void insertHelper(BinaryNode<String> newNode, BinaryNode<String> subtree) {
+        String key = newNode.getData();
+        int lowPrefix = 0;
+        int highPrefix = 0;
+
+        while (subtree != null) {
+            String value = subtree.getData();
+            int prefix = commonPrefixLength(key, value, Math.min(lowPrefix, highPrefix));
+
+            if (compareAfterPrefix(key, value, prefix) <= 0) {
+                if (subtree.getLeft() == null) {
+                    subtree.setLeft(newNode);
+                    newNode.setUp(subtree);
+                    return;
+                }
+                highPrefix = prefix;
+                subtree = subtree.getLeft();
+            } else {
+                if (subtree.getRight() == null) {
+                    subtree.setRight(newNode);
+                    newNode.setUp(subtree);
+                    return;
+                }
+                lowPrefix = prefix;
+                subtree = subtree.getRight();
+            }
+        }
+    }
+
+    /**
+     * Check whether data is stored in the tree, comparing each node's value only from
+     * the first character not known to be shared with find.
+     * @param find the value to check for in the collection
+     * @return true if the collection contains data one or more times,
+     * and false otherwise
+     */
+    @Override
+    public boolean contains(Comparable<String> find) {
+        if (!(find instanceof String)) {
+            return super.contains(find);
+        }
+
+        String key = (String)find;
+        int lowPrefix = 0;
+        int highPrefix = 0;
+        BinaryNode<String> subtree = root;
+
+        while (subtree != null) {
+            String value = subtree.getData();
+            int prefix = commonPrefixLength(key, value, Math.min(lowPrefix, highPrefix));
+            int comparison = compareAfterPrefix(key, value, prefix);
+
+            if (comparison == 0) {
+                return true;
+            } else if (comparison < 0) {
+                highPrefix = prefix;
+                subtree = subtree.getLeft();
+            } else {
+                lowPrefix = prefix;
+                subtree = subtree.getRight();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts the leading characters that key and value share, given that they are already
+     * known to share their first from characters.
+     * @return the length of the longest common prefix of key and value
+     */
+    protected int commonPrefixLength(String key, String value, int from) {
+        int end = Math.min(key.length(), value.length());
+        int i = from;
+        while (i < end && key.charAt(i) == value.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Compares key and value the same way String.compareTo() does, given the length of
+     * their longest common prefix.
+     * @return a negative number, zero, or a positive number when key is less than,
+     * equal to, or greater than value
+     */
+    private static int compareAfterPrefix(String key, String value, int prefix) {
+        if (prefix < key.length() && prefix < value.length()) {
+            return key.charAt(prefix) - value.charAt(prefix);
+        }
+        return key.length() - value.length();
+    }
+
+    //-----------------------------------------------------------------------------------------------------------------------------//
+    //                                                          TEST METHODS                                                       //
+    //-----------------------------------------------------------------------------------------------------------------------------//
+
+    /**
+     * A StringRedBlackTree that counts the characters examined by its comparisons, for
+     * tests and benchmarks. The count is not synchronized, so lookups must not run
+     * concurrently while it is being used.
+     */
+    protected static class CharacterCountingTree extends StringRedBlackTree {
+
+        // number of characters examined by comparisons in insert() and contains()
+        protected long charactersCompared = 0;
+
+        @Override
+        protected int commonPrefixLength(String key, String value, int from) {
+            int prefix = super.commonPrefixLength(key, value, from);
+            // Count the mismatching character too, unless one string ran out.
+            charactersCompared += (prefix < Math.min(key.length(), value.length())) ? prefix - from + 1 : prefix - from;
+            return prefix;
+        }
+
+    }
+
+    /**
+     * Tests that the tree has the same shape and colors as a RedBlackTree<String> built
+     * from the same values, including values that are prefixes of each other and duplicates.
+     * @return true if both trees have the same level-order string
+     */
+    public static boolean test1() {
+        StringRedBlackTree tree = new StringRedBlackTree();
+        RedBlackTree<String> expected = new RedBlackTree<>();
+
+        String[] data = {"ab", "a", "abc", "b", "", "abd", "ab", "abca", "aa", "abc", "b"};
+        for (String dataPoint : data) {
+            tree.insert(dataPoint);
+            expected.insert(dataPoint);
+        }
+
+        return tree.toString().equals(expected.toString());
+    }
+
+    /**
+     * Tests lookups of URL-like values that share long prefixes.
+     * @return true if every inserted value is found, no other value is found, and fewer
+     * characters are compared per lookup than scanning the shared prefix once per level
+     */
+    public static boolean test2() {
+        CharacterCountingTree tree = new CharacterCountingTree();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            keys.add(String.format("https://example.com/api/v1/users/%05d/profile", i * 7));
+        }
+        Collections.shuffle(keys, new Random(1));
+        for (String key : keys) {
+            tree.insert(key);
+        }
+
+        tree.charactersCompared = 0;
+        for (String key : keys) {
+            if (!tree.contains(key)) {
+                return false;
+            }
+        }
+        long perLookup = tree.charactersCompared / keys.size();
+
+        for (int i = 0; i < 2_000; i++) {
+            if (tree.contains(String.format("https://example.com/api/v1/users/%05d/profile", i * 7 + 3))) {
+                return false;
+            }
+        }
+        int levels = (int)Math.ceil(Math.log(keys.size() + 1) / Math.log(2));
+        return !tree.contains("https://example.com/") && perLookup < levels * "https://example.com/api/v1/users/".length()
+            && tree.range(null, null).equals(keys.stream().sorted().collect(Collectors.toList()));
+    }
+
+    public static void main (String[] args) {
+        System.out.println("Test 1: " + test1());
+        System.out.println("Test 2: " + test2());
+    }
+
+}
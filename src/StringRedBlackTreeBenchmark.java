@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares lookups of long URL-like keys with shared prefixes in a RedBlackTree<String>
+ * and a StringRedBlackTree. Reports the number of characters compared per lookup and
+ * the lookup throughput of both trees.
+ */
+public class StringRedBlackTreeBenchmark {
+
+    private static final int KEYS = 200_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        String[] sections = {"users", "orders", "products", "sessions"};
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            keys.add("https://api.internal.example.com/service/v2/tenants/acme-corporation/"
+                + sections[random.nextInt(sections.length)] + "/" + String.format("%09d", random.nextInt(1_000_000_000))
+                + "/details?expand=history");
+        }
+
+        RedBlackTree<String> plain = new RedBlackTree<>();
+        StringRedBlackTree prefixed = new StringRedBlackTree();
+        for (String key : keys) {
+            plain.insert(key);
+            prefixed.insert(key);
+        }
+        Collections.shuffle(keys, random);
+
+        System.out.printf("%d keys, average length %.0f%n", KEYS,
+            keys.stream().mapToInt(String::length).average().orElse(0));
+        System.out.printf("%24s %26s %20s%n", "", "characters per lookup", "lookups/sec");
+        System.out.printf("%24s %26.1f %20.0f%n", "RedBlackTree<String>",
+            (double)charactersComparedByContains(plain, keys) / keys.size(), lookupsPerSecond(plain, keys));
+
+        System.out.printf("%24s %26.1f %20.0f%n", "StringRedBlackTree",
+            (double)charactersComparedByContains(prefixed, keys) / keys.size(), lookupsPerSecond(prefixed, keys));
+    }
+
+    /**
+     * Counts the characters StringRedBlackTree.contains() examines while looking up every
+     * key, using a copy of the tree that counts them, so that the tree being timed does not.
+     */
+    private static long charactersComparedByContains(StringRedBlackTree tree, List<String> keys) {
+        StringRedBlackTree.CharacterCountingTree counting = new StringRedBlackTree.CharacterCountingTree();
+        counting.root = tree.root;
+        counting.count = tree.count;
+        for (String key : keys) {
+            counting.contains(key);
+        }
+        return counting.charactersCompared;
+    }
+
+    /**
+     * Counts the characters String.compareTo() examines while BinarySearchTree.contains()
+     * looks up every key, which compares against each node once when the values are equal,
+     * twice when the key is smaller, and three times when the key is larger.
+     */
+    private static long charactersComparedByContains(RedBlackTree<String> tree, List<String> keys) {
+        long characters = 0;
+        for (String key : keys) {
+            BinaryNode<String> node = tree.root;
+            while (node != null) {
+                String value = node.getData();
+                int end = Math.min(key.length(), value.length());
+                int prefix = 0;
+                while (prefix < end && key.charAt(prefix) == value.charAt(prefix)) {
+                    prefix++;
+                }
+                int perComparison = (prefix < end) ? prefix + 1 : prefix;
+
+                int comparison = key.compareTo(value);
+                if (comparison == 0) {
+                    characters += perComparison;
+                    break;
+                } else if (comparison < 0) {
+                    characters += 2L * perComparison;
+                    node = node.getLeft();
+                } else {
+                    characters += 3L * perComparison;
+                    node = node.getRight();
+                }
+            }
+        }
+        return characters;
+    }
+
+    /**
+     * Looks up every key ROUNDS times, after an untimed warm-up round.
+     * @return the number of lookups per second in the timed rounds
+     */
+    private static double lookupsPerSecond(SortedCollection<String> tree, List<String> keys) {
+        int found = 0;
+        for (String key : keys) {
+            found += tree.contains(key) ? 1 : 0;
+        }
+
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String key : keys) {
+                found += tree.contains(key) ? 1 : 0;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (found != keys.size() * (ROUNDS + 1)) {
+            throw new IllegalStateException("A key was not found.");
+        }
+        return (double)keys.size() * ROUNDS / (elapsed / 1e9);
+    }
+
+}
@@ -0,0 +1,222 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A client for a TreeServer running on the same machine.
+ *
+ * The insert(), contains(), size() and range() methods send a single request and wait
+ * for its response. To pipeline requests, call any number of send methods followed by
+ * flush(), and then call the matching read methods in the same order.
+ */
+public class TreeClient<T extends Comparable<T>> implements AutoCloseable {
+
+    private final KeyCodec<T> codec;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    // the request currently being assembled, so that its length can be written first
+    private final ByteArrayOutputStream requestBytes = new ByteArrayOutputStream();
+    private final DataOutputStream request = new DataOutputStream(requestBytes);
+
+    /**
+     * Connects to a TreeServer listening on the loopback interface.
+     * @param port the port the server is listening on
+     * @param codec encodes and decodes the values stored in the server's tree
+     * @throws IOException if the connection cannot be opened
+     */
+    public TreeClient(int port, KeyCodec<T> codec) throws IOException {
+        this.codec = codec;
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        this.socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Inserts a new data value into the server's tree.
+     * @param data the new value being inserted
+     * @throws IOException if the request fails
+     */
+    public void insert(T data) throws IOException {
+        sendInsert(data);
+        flush();
+        readInsert();
+    }
+
+    /**
+     * Check whether data is stored in the server's tree.
+     * @param find the value to check for
+     * @return true if the tree contains find one or more times, and false otherwise
+     * @throws IOException if the request fails
+     */
+    public boolean contains(T find) throws IOException {
+        sendContains(find);
+        flush();
+        return readContains();
+    }
+
+    /**
+     * Counts the number of values in the server's tree, including duplicates.
+     * @return the number of values in the tree
+     * @throws IOException if the request fails
+     */
+    public int size() throws IOException {
+        sendSize();
+        flush();
+        return readSize();
+    }
+
+    /**
+     * Collects every value of the server's tree between low and high (both inclusive).
+     * @param low the smallest value to include
+     * @param high the largest value to include
+     * @return a list of the values within the range in sorted order
+     * @throws IOException if the request fails
+     */
+    public List<T> range(T low, T high) throws IOException {
+        sendRange(low, high);
+        flush();
+        return readRange();
+    }
+
+    /**
+     * Queues an insert request without waiting for its response.
+     * @param data the new value being inserted
+     * @throws IOException if the request cannot be written
+     */
+    public void sendInsert(T data) throws IOException {
+        beginRequest(TreeServer.OP_INSERT);
+        codec.write(data, request);
+        endRequest();
+    }
+
+    /**
+     * Queues a contains request without waiting for its response.
+     * @param find the value to check for
+     * @throws IOException if the request cannot be written
+     */
+    public void sendContains(T find) throws IOException {
+        beginRequest(TreeServer.OP_CONTAINS);
+        codec.write(find, request);
+        endRequest();
+    }
+
+    /**
+     * Queues a size request without waiting for its response.
+     * @throws IOException if the request cannot be written
+     */
+    public void sendSize() throws IOException {
+        beginRequest(TreeServer.OP_SIZE);
+        endRequest();
+    }
+
+    /**
+     * Queues a range request without waiting for its response.
+     * @param low the smallest value to include
+     * @param high the largest value to include
+     * @throws IOException if the request cannot be written
+     */
+    public void sendRange(T low, T high) throws IOException {
+        beginRequest(TreeServer.OP_RANGE);
+        codec.write(low, request);
+        codec.write(high, request);
+        endRequest();
+    }
+
+    /**
+     * Starts assembling a new request, discarding what is left of a previous request
+     * whose values could not be encoded.
+     */
+    private void beginRequest(byte op) throws IOException {
+        requestBytes.reset();
+        request.writeByte(op);
+    }
+
+    /**
+     * Prefixes the assembled request with its length and queues it.
+     */
+    private void endRequest() throws IOException {
+        out.writeInt(requestBytes.size());
+        requestBytes.writeTo(out);
+        requestBytes.reset();
+    }
+
+    /**
+     * Sends every queued request to the server.
+     * @throws IOException if the requests cannot be sent
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Reads the response to an insert request.
+     * @throws IOException if the response cannot be read or reports an error
+     */
+    public void readInsert() throws IOException {
+        readStatus();
+    }
+
+    /**
+     * Reads the response to a contains request.
+     * @return true if the tree contained the value, and false otherwise
+     * @throws IOException if the response cannot be read or reports an error
+     */
+    public boolean readContains() throws IOException {
+        readStatus();
+        return in.readBoolean();
+    }
+
+    /**
+     * Reads the response to a size request.
+     * @return the number of values in the tree
+     * @throws IOException if the response cannot be read or reports an error
+     */
+    public int readSize() throws IOException {
+        readStatus();
+        return in.readInt();
+    }
+
+    /**
+     * Reads the response to a range request.
+     * @return a list of the values within the range in sorted order
+     * @throws IOException if the response cannot be read or reports an error
+     */
+    public List<T> readRange() throws IOException {
+        readStatus();
+        int count = in.readInt();
+        List<T> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(codec.read(in));
+        }
+        return values;
+    }
+
+    /**
+     * Reads the length and status of the next response.
+     * @throws IOException with the server's message if the status reports an error
+     */
+    private void readStatus() throws IOException {
+        in.readInt();
+        if (in.readByte() == TreeServer.STATUS_ERROR) {
+            throw new IOException("Server error: " + in.readUTF());
+        }
+    }
+
+    /**
+     * Disconnects from the server.
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+}
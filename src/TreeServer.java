@@ -0,0 +1,565 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An embedded server that shares a single RedBlackTree with other processes on the
+ * same machine over a loopback socket. Every connection is handled by its own thread,
+ * and requests on a connection may be pipelined: the server answers them in order and
+ * only flushes its responses once no further request is waiting to be read.
+ *
+ * Every request and response is a frame made of a 4 byte length, followed by that
+ * many bytes. A request frame starts with an operation code, a response frame starts
+ * with a status code, and values are encoded with the server's KeyCodec. Request frames
+ * hold between 1 and MAX_FRAME_SIZE bytes, and must hold exactly the request's operation
+ * code and values. Other frames are answered with ERROR, and a frame whose length is out
+ * of bounds also closes the connection, since the rest of the stream cannot be trusted.
+ *
+ *   INSERT   key            ->  OK
+ *   CONTAINS key            ->  OK, 1 byte boolean
+ *   SIZE                    ->  OK, 4 byte count
+ *   RANGE    low, high      ->  OK, 4 byte count, keys in sorted order
+ *   (any failure)           ->  ERROR, UTF message
+ *
+ * CONTAINS, SIZE and RANGE run in parallel under a shared read lock, so the tree's
+ * contains(), size() and range() must not modify it. Trees that restructure themselves
+ * on reads, such as a RelaxedRedBlackTree, have to synchronize those reads internally.
+ */
+public class TreeServer<T extends Comparable<T>> implements AutoCloseable {
+
+    // operation codes sent by clients
+    public static final byte OP_INSERT = 1;
+    public static final byte OP_CONTAINS = 2;
+    public static final byte OP_SIZE = 3;
+    public static final byte OP_RANGE = 4;
+
+    // status codes sent back by the server
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+
+    // largest number of bytes accepted in a request frame, after its length
+    public static final int MAX_FRAME_SIZE = 1 << 20;
+
+    // the tree shared by every connection
+    protected final RedBlackTree<T> tree;
+    // encodes and decodes the values stored in the tree
+    protected final KeyCodec<T> codec;
+    // lets lookups run in parallel, while inserts have exclusive access to the tree
+    protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final ExecutorService connectionExecutor = newConnectionExecutor();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private ServerSocket serverSocket = null;
+
+    /**
+     * Creates a server for the provided tree. The server does not accept connections
+     * until start() is called.
+     * @param tree the tree being shared
+     * @param codec encodes and decodes the values stored in the tree
+     */
+    public TreeServer(RedBlackTree<T> tree, KeyCodec<T> codec) {
+        this.tree = tree;
+        this.codec = codec;
+    }
+
+    /**
+     * Uses one virtual thread per connection when the running JVM supports them (Java 21+),
+     * and falls back to one platform thread per connection otherwise.
+     */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "tree-server-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Starts accepting connections on the loopback interface.
+     * @param port the port to listen on, or 0 to pick any free port
+     * @return the port the server is listening on
+     * @throws IOException if the server socket cannot be opened
+     * @throws IllegalStateException if the server was already started
+     */
+    public synchronized int start(int port) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Server was already started.");
+        }
+        serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+
+        Thread acceptor = new Thread(this::acceptConnections, "tree-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Hands every accepted connection to its own thread until the server socket is closed
+     * or accepting fails.
+     */
+    private void acceptConnections() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // Either the server socket was closed, or accepting fails for a reason that
+                // retrying will not fix, such as running out of file descriptors.
+                return;
+            }
+            connections.add(socket);
+            try {
+                socket.setTcpNoDelay(true);
+                if (serverSocket.isClosed()) {
+                    // close() ran before the socket was added, so it was not closed with the others.
+                    throw new RejectedExecutionException("Server was closed.");
+                }
+                connectionExecutor.execute(() -> serve(socket));
+            } catch (IOException | RejectedExecutionException e) {
+                connections.remove(socket);
+                try {
+                    socket.close();
+                } catch (IOException closeFailure) {
+                    // The connection is dropped either way.
+                }
+                if (e instanceof RejectedExecutionException) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers the requests sent over a single connection until the client disconnects.
+     */
+    private void serve(Socket socket) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            ByteArrayOutputStream responseBytes = new ByteArrayOutputStream();
+            DataOutputStream response = new DataOutputStream(responseBytes);
+            byte[] frame = new byte[64];
+
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                responseBytes.reset();
+                if (length < 1 || length > MAX_FRAME_SIZE) {
+                    response.writeByte(STATUS_ERROR);
+                    response.writeUTF("Invalid frame length " + length + ".");
+                } else {
+                    if (frame.length < length) {
+                        frame = new byte[Math.max(length, Math.min(2 * frame.length, MAX_FRAME_SIZE))];
+                    }
+                    in.readFully(frame, 0, length);
+                    handle(new DataInputStream(new ByteArrayInputStream(frame, 0, length)), response);
+                }
+                out.writeInt(responseBytes.size());
+                responseBytes.writeTo(out);
+
+                // An empty frame is harmless, but any other invalid length leaves the stream
+                // out of sync, so answer the requests so far and disconnect.
+                if (length < 0 || length > MAX_FRAME_SIZE) {
+                    break;
+                }
+
+                // Batch responses: only flush once every pipelined request has been answered.
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // The client went away, nothing left to answer.
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * Decodes one request frame and writes the matching response body.
+     * @param request the bytes of the request frame, after its length
+     * @param response the destination of the response body
+     * @throws IOException if the response cannot be written
+     */
+    protected void handle(DataInputStream request, DataOutputStream response) throws IOException {
+        try {
+            byte op = request.readByte();
+            switch (op) {
+                case OP_INSERT: {
+                    T key = codec.read(request);
+                    requireEnd(request);
+                    lock.writeLock().lock();
+                    try {
+                        tree.insert(key);
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                    response.writeByte(STATUS_OK);
+                    break;
+                }
+                case OP_CONTAINS: {
+                    T key = codec.read(request);
+                    requireEnd(request);
+                    boolean found;
+                    lock.readLock().lock();
+                    try {
+                        found = tree.contains(key);
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                    response.writeByte(STATUS_OK);
+                    response.writeBoolean(found);
+                    break;
+                }
+                case OP_SIZE: {
+                    requireEnd(request);
+                    int size;
+                    lock.readLock().lock();
+                    try {
+                        size = tree.size();
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                    response.writeByte(STATUS_OK);
+                    response.writeInt(size);
+                    break;
+                }
+                case OP_RANGE: {
+                    T low = codec.read(request);
+                    T high = codec.read(request);
+                    requireEnd(request);
+                    List<T> values;
+                    lock.readLock().lock();
+                    try {
+                        values = tree.range(low, high);
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                    response.writeByte(STATUS_OK);
+                    response.writeInt(values.size());
+                    for (T value : values) {
+                        codec.write(value, response);
+                    }
+                    break;
+                }
+                default:
+                    response.writeByte(STATUS_ERROR);
+                    response.writeUTF("Unknown operation code " + op + ".");
+            }
+        } catch (EOFException e) {
+            response.writeByte(STATUS_ERROR);
+            response.writeUTF("Request frame is too short.");
+        } catch (IOException | RuntimeException e) {
+            response.writeByte(STATUS_ERROR);
+            response.writeUTF(String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * Checks that every byte of a request frame was decoded.
+     * @throws IOException if the frame holds bytes past the end of the request
+     */
+    private static void requireEnd(DataInputStream request) throws IOException {
+        int trailing = request.available();
+        if (trailing > 0) {
+            throw new IOException("Request frame has " + trailing + " unexpected trailing bytes.");
+        }
+    }
+
+    /**
+     * Stops accepting connections and disconnects every client.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+            for (Socket socket : connections) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            // Closing is best effort, the sockets are unusable either way.
+        }
+        connectionExecutor.shutdownNow();
+    }
+
+    //-----------------------------------------------------------------------------------------------------------------------------//
+    //                                                          TEST METHODS                                                       //
+    //-----------------------------------------------------------------------------------------------------------------------------//
+
+    /**
+     * Tests one request of each kind sent over a single connection.
+     * @return true if every response matches the tree built from the inserted values
+     */
+    public static boolean test1() {
+        try (TreeServer<Integer> server = new TreeServer<>(new RedBlackTree<>(), KeyCodec.INTEGER)) {
+            int port = server.start(0);
+            try (TreeClient<Integer> client = new TreeClient<>(port, KeyCodec.INTEGER)) {
+                for (int dataPoint : new int[] {14, 7, 18, 23, 1, 11, 20}) {
+                    client.insert(dataPoint);
+                }
+
+                return client.size() == 7 && client.contains(11) && !client.contains(12)
+                    && client.range(7, 20).equals(List.of(7, 11, 14, 18, 20));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Tests pipelined requests from several connections sharing the same tree.
+     * @return true if every pipelined response arrives in order and the inserts from
+     * all connections end up in the shared tree
+     */
+    public static boolean test2() {
+        try (TreeServer<String> server = new TreeServer<>(new RedBlackTree<>(), KeyCodec.STRING)) {
+            int port = server.start(0);
+            try (TreeClient<String> first = new TreeClient<>(port, KeyCodec.STRING);
+                    TreeClient<String> second = new TreeClient<>(port, KeyCodec.STRING)) {
+                for (char c = 'A'; c <= 'Z'; c++) {
+                    (c % 2 == 0 ? first : second).sendInsert(String.valueOf(c));
+                }
+                first.sendContains("B");
+                first.sendContains("D");
+                first.flush();
+                second.flush();
+
+                for (char c = 'A'; c <= 'Z'; c++) {
+                    (c % 2 == 0 ? first : second).readInsert();
+                }
+                if (!first.readContains() || !first.readContains() || !second.contains("C")) {
+                    return false;
+                }
+
+                return second.size() == 26 && first.range("X", "ZZ").equals(List.of("X", "Y", "Z"));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Tests concurrent inserts and range queries against a BufferedRedBlackTree, whose
+     * range queries must see the buffered values without merging them into the tree.
+     * @return true if no request fails and the tree holds every inserted value, in a
+     * valid red-black tree, once every connection is done
+     */
+    public static boolean test3() {
+        BufferedRedBlackTree<Integer> tree = new BufferedRedBlackTree<>(16);
+        try (TreeServer<Integer> server = new TreeServer<>(tree, KeyCodec.INTEGER)) {
+            int port = server.start(0);
+
+            int connections = 4;
+            int insertsPerConnection = 3_000;
+            List<Thread> threads = new ArrayList<>();
+            AtomicBoolean failed = new AtomicBoolean(false);
+            for (int c = 0; c < connections; c++) {
+                int offset = c;
+                Thread thread = new Thread(() -> {
+                    try (TreeClient<Integer> client = new TreeClient<>(port, KeyCodec.INTEGER)) {
+                        for (int batch = 0; batch < insertsPerConnection; batch += 100) {
+                            for (int i = batch; i < batch + 100; i++) {
+                                client.sendInsert(i * connections + offset);
+                                client.sendRange(i * connections - 64, i * connections);
+                            }
+                            client.flush();
+                            for (int i = batch; i < batch + 100; i++) {
+                                client.readInsert();
+                                client.readRange();
+                            }
+                        }
+                    } catch (IOException e) {
+                        failed.set(true);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            tree.flush();
+            return !failed.get() && tree.size() == connections * insertsPerConnection
+                && tree.range(null, null).size() == connections * insertsPerConnection
+                && RedBlackTree.blackHeight((RedBlackNode<Integer>)tree.root) >= 0;
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Tests malformed request frames sent over a raw socket: an empty frame, a frame with
+     * trailing bytes, a string with an invalid length, a truncated frame, and finally a
+     * negative frame length.
+     * @return true if each malformed frame is answered with an error without disturbing
+     * the requests around it, and the connection is closed after the negative length
+     */
+    public static boolean test4() {
+        try (TreeServer<String> server = new TreeServer<>(new RedBlackTree<>(), KeyCodec.STRING);
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.start(0))) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            out.writeInt(0);
+            out.writeInt(6);
+            out.writeByte(OP_INSERT);
+            out.writeInt(1);
+            out.writeByte('A');
+            out.writeInt(7);
+            out.writeByte(OP_INSERT);
+            out.writeInt(1);
+            out.writeByte('B');
+            out.writeByte(0);
+            out.writeInt(5);
+            out.writeByte(OP_CONTAINS);
+            out.writeInt(Integer.MAX_VALUE);
+            out.writeInt(3);
+            out.writeByte(OP_CONTAINS);
+            out.writeShort(0);
+            out.writeInt(1);
+            out.writeByte(OP_SIZE);
+            out.writeInt(-1);
+            out.flush();
+
+            byte[] expected = {STATUS_ERROR, STATUS_OK, STATUS_ERROR, STATUS_ERROR, STATUS_ERROR, STATUS_OK, STATUS_ERROR};
+            for (int i = 0; i < expected.length; i++) {
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                if (body[0] != expected[i]) {
+                    return false;
+                }
+                if (i == 5 && new DataInputStream(new ByteArrayInputStream(body, 1, 4)).readInt() != 1) {
+                    return false;
+                }
+            }
+            return in.read() == -1;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Tests that a request whose value cannot be encoded is never sent, and does not
+     * disturb the next request on the same connection.
+     * @return true if the oversized insert fails on the client and the inserts around it succeed
+     */
+    public static boolean test5() {
+        try (TreeServer<String> server = new TreeServer<>(new RedBlackTree<>(), KeyCodec.STRING);
+                TreeClient<String> client = new TreeClient<>(server.start(0), KeyCodec.STRING)) {
+            client.insert("before");
+            try {
+                client.insert("x".repeat(KeyCodec.MAX_STRING_BYTES + 1));
+                return false;
+            } catch (IOException e) {
+                // Expected: the key is too long to encode.
+            }
+            client.insert("after");
+            return client.size() == 2 && client.range("a", "z").equals(List.of("after", "before"));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Tests closing the server while clients are connecting.
+     * @return true if every connection that the server accepted is closed by close()
+     */
+    public static boolean test6() {
+        List<Socket> clients = new ArrayList<>();
+        TreeServer<Integer> server = new TreeServer<>(new RedBlackTree<>(), KeyCodec.INTEGER);
+        try {
+            int port = server.start(0);
+            Thread closer = new Thread(() -> {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                server.close();
+            });
+            closer.start();
+            for (int i = 0; i < 200; i++) {
+                try {
+                    clients.add(new Socket(InetAddress.getLoopbackAddress(), port));
+                } catch (IOException e) {
+                    break;
+                }
+            }
+            closer.join();
+
+            for (Socket client : clients) {
+                client.setSoTimeout(2000);
+                try {
+                    if (client.getInputStream().read() != -1) {
+                        return false;
+                    }
+                } catch (SocketTimeoutException e) {
+                    return false;
+                } catch (IOException e) {
+                    // Reset by the server, which also means the connection was closed.
+                }
+            }
+            return true;
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            server.close();
+            for (Socket client : clients) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    // Only cleaning up.
+                }
+            }
+        }
+    }
+
+    public static void main (String[] args) {
+        System.out.println("Test 1: " + test1());
+        System.out.println("Test 2: " + test2());
+        System.out.println("Test 3: " + test3());
+        System.out.println("Test 4: " + test4());
+        System.out.println("Test 5: " + test5());
+        System.out.println("Test 6: " + test6());
+    }
+
+}
@@ -0,0 +1,107 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Loopback load test for TreeServer. For a growing number of connections, every
+ * connection sends pipelined batches of contains and insert requests against a
+ * shared, pre-filled tree. Prints the overall throughput and the 99th percentile
+ * latency of a single request, measured from when its batch was sent until its
+ * response was read.
+ */
+public class TreeServerLoadTest {
+
+    // number of values inserted before the measurements start
+    private static final int PREFILL = 100_000;
+    // number of requests sent by every connection
+    private static final int REQUESTS_PER_CONNECTION = 50_000;
+    // number of requests sent in each pipelined batch
+    private static final int PIPELINE_DEPTH = 32;
+    // share of requests that are inserts, the rest are contains requests
+    private static final double INSERT_RATIO = 0.2;
+
+    public static void main(String[] args) throws Exception {
+        int[] connectionCounts = {1, 2, 4, 8, 16, 32};
+
+        System.out.printf("%12s %16s %14s%n", "connections", "requests/sec", "p99 (us)");
+        for (int connections : connectionCounts) {
+            RedBlackTree<Integer> tree = new RedBlackTree<>();
+            Random random = new Random(42);
+            for (int i = 0; i < PREFILL; i++) {
+                tree.insert(random.nextInt());
+            }
+
+            try (TreeServer<Integer> server = new TreeServer<>(tree, KeyCodec.INTEGER)) {
+                int port = server.start(0);
+                run(port, connections);
+            }
+        }
+    }
+
+    /**
+     * Runs the load with the provided number of connections and prints one row of results.
+     */
+    private static void run(int port, int connections) throws Exception {
+        long[][] latencies = new long[connections][REQUESTS_PER_CONNECTION];
+        Thread[] workers = new Thread[connections];
+        Exception[] failure = new Exception[1];
+
+        for (int c = 0; c < connections; c++) {
+            long[] latency = latencies[c];
+            long seed = c;
+            workers[c] = new Thread(() -> {
+                try (TreeClient<Integer> client = new TreeClient<>(port, KeyCodec.INTEGER)) {
+                    Random random = new Random(seed);
+                    boolean[] isInsert = new boolean[PIPELINE_DEPTH];
+
+                    for (int sent = 0; sent < REQUESTS_PER_CONNECTION; sent += PIPELINE_DEPTH) {
+                        int batch = Math.min(PIPELINE_DEPTH, REQUESTS_PER_CONNECTION - sent);
+                        long start = System.nanoTime();
+                        for (int i = 0; i < batch; i++) {
+                            isInsert[i] = random.nextDouble() < INSERT_RATIO;
+                            if (isInsert[i]) {
+                                client.sendInsert(random.nextInt());
+                            } else {
+                                client.sendContains(random.nextInt());
+                            }
+                        }
+                        client.flush();
+                        for (int i = 0; i < batch; i++) {
+                            if (isInsert[i]) {
+                                client.readInsert();
+                            } else {
+                                client.readContains();
+                            }
+                            latency[sent + i] = System.nanoTime() - start;
+                        }
+                    }
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        long[] all = new long[connections * REQUESTS_PER_CONNECTION];
+        for (int c = 0; c < connections; c++) {
+            System.arraycopy(latencies[c], 0, all, c * REQUESTS_PER_CONNECTION, REQUESTS_PER_CONNECTION);
+        }
+        Arrays.sort(all);
+        long p99 = all[(int)Math.ceil(all.length * 0.99) - 1];
+
+        double throughput = all.length / (elapsed / 1e9);
+        System.out.printf("%12d %16.0f %14.1f%n", connections, throughput, p99 / 1e3);
+    }
+
+}
@@ -0,0 +1,264 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Spliterator;
+
+/**
+ * A SortedCollection that forwards every operation to another collection while logging
+ * it to a trace file, so that the same workload can later be replayed against other
+ * implementations with a WorkloadReplayer.
+ *
+ * The trace starts with the 4 byte MAGIC number and a 1 byte VERSION. Every operation
+ * is then logged as a 1 byte operation code, the nanoseconds since the previous
+ * operation as a variable-length number (7 bits per byte, lowest bits first), and
+ * for inserts and contains, the value encoded with the recorder's KeyCodec. A value the
+ * KeyCodec cannot encode is rejected: the operation is neither logged nor forwarded,
+ * so the trace always matches the operations applied to the wrapped collection.
+ */
+public class WorkloadRecorder<T extends Comparable<T>> implements SortedCollection<T>, AutoCloseable {
+
+    // identifies trace files, the bytes spell "TRCE"
+    public static final int MAGIC = 0x54524345;
+    public static final byte VERSION = 1;
+
+    // operation codes logged to the trace
+    public static final byte OP_INSERT = 1;
+    public static final byte OP_CONTAINS = 2;
+    public static final byte OP_SIZE = 3;
+    public static final byte OP_IS_EMPTY = 4;
+    public static final byte OP_CLEAR = 5;
+
+    // the collection every operation is forwarded to
+    protected final SortedCollection<T> delegate;
+    protected final KeyCodec<T> codec;
+    private final DataOutputStream out;
+    private long lastTimestamp;
+    // the value currently being encoded, so that nothing is logged if encoding fails
+    private final ByteArrayOutputStream valueBytes = new ByteArrayOutputStream();
+    private final DataOutputStream value = new DataOutputStream(valueBytes);
+
+    /**
+     * Creates a recorder that logs the operations on delegate to a new trace file.
+     * @param delegate the collection every operation is forwarded to
+     * @param codec encodes the values passed to insert() and contains()
+     * @param traceFile the file the trace is written to, replacing any existing file
+     * @throws IOException if the trace file cannot be created
+     */
+    public WorkloadRecorder(SortedCollection<T> delegate, KeyCodec<T> codec, Path traceFile) throws IOException {
+        this.delegate = delegate;
+        this.codec = codec;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(traceFile), 1 << 16));
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+        this.lastTimestamp = System.nanoTime();
+    }
+
+    /**
+     * Logs the start of an operation: its code and the time since the previous operation.
+     */
+    private void log(byte op) throws IOException {
+        long now = System.nanoTime();
+        out.writeByte(op);
+        long delta = Math.max(now - lastTimestamp, 0);
+        while ((delta & ~0x7FL) != 0) {
+            out.writeByte((int)((delta & 0x7F) | 0x80));
+            delta >>>= 7;
+        }
+        out.writeByte((int)delta);
+        lastTimestamp = now;
+    }
+
+    /**
+     * Logs an operation on a value, after encoding the value first so that a value the
+     * codec rejects leaves the trace untouched.
+     * @throws IOException if the value cannot be encoded or the trace cannot be written
+     */
+    private void log(byte op, T data) throws IOException {
+        valueBytes.reset();
+        codec.write(data, value);
+        log(op);
+        valueBytes.writeTo(out);
+    }
+
+    /**
+     * Logs the insert to the trace and forwards it to the wrapped collection.
+     * @param data the new value being inserted
+     * @throws NullPointerException if data argument is null, we do not allow
+     * null values to be stored within a SortedCollection
+     * @throws UncheckedIOException if the recorder's KeyCodec cannot encode data, in which
+     * case the insert is not forwarded, or if the trace cannot be written
+     */
+    @Override
+    public synchronized void insert(T data) throws NullPointerException {
+        if (data == null) {
+            throw new NullPointerException("Cannot insert a null value.");
+        }
+        try {
+            log(OP_INSERT, data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        delegate.insert(data);
+    }
+
+    /**
+     * Check whether data is stored in the collection, logging the lookup to the trace.
+     * @param find the value to check for in the collection, which must be a T so that
+     * the recorder's KeyCodec can encode it
+     * @return true if the collection contains data one or more times,
+     * and false otherwise
+     * @throws UncheckedIOException if the recorder's KeyCodec cannot encode find, in which
+     * case the lookup is not forwarded, or if the trace cannot be written
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized boolean contains(Comparable<T> find) {
+        try {
+            log(OP_CONTAINS, (T)find);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return delegate.contains(find);
+    }
+
+    @Override
+    public synchronized int size() {
+        try {
+            log(OP_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return delegate.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        try {
+            log(OP_IS_EMPTY);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return delegate.isEmpty();
+    }
+
+    @Override
+    public synchronized void clear() {
+        try {
+            log(OP_CLEAR);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        delegate.clear();
+    }
+
+    /**
+     * Returns the wrapped collection's Spliterator. Traversals are not logged to the trace.
+     * @return a Spliterator over the wrapped collection's values in sorted order
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return delegate.spliterator();
+    }
+
+    /**
+     * Writes any buffered operations to the trace file and closes it. The wrapped
+     * collection stays usable.
+     * @throws IOException if the trace file cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    //-----------------------------------------------------------------------------------------------------------------------------//
+    //                                                          TEST METHODS                                                       //
+    //-----------------------------------------------------------------------------------------------------------------------------//
+
+    /**
+     * Tests that the recorder forwards operations to the wrapped collection, and that a
+     * trace recorded against a BinarySearchTree replays the same operations against a
+     * RedBlackTree, in both closed-loop and open-loop mode.
+     * @return true if the wrapped tree and the replayed trees hold the same values
+     */
+    public static boolean test1() {
+        try {
+            Path trace = Files.createTempFile("workload", ".trace");
+            BinarySearchTree<Integer> recorded = new BinarySearchTree<>();
+
+            try (WorkloadRecorder<Integer> recorder = new WorkloadRecorder<>(recorded, KeyCodec.INTEGER, trace)) {
+                for (int dataPoint : new int[] {14, 7, 18, 23, 1, 11, 20, 29, 25, 27}) {
+                    recorder.insert(dataPoint);
+                    recorder.contains(dataPoint + 1);
+                }
+                if (recorder.size() != 10 || recorder.isEmpty() || !recorder.contains(27)) {
+                    return false;
+                }
+            }
+
+            WorkloadReplayer<Integer> replayer = new WorkloadReplayer<>(trace, KeyCodec.INTEGER);
+            Files.delete(trace);
+            if (replayer.operationCount() != 23) {
+                return false;
+            }
+
+            RedBlackTree<Integer> closedLoop = new RedBlackTree<>();
+            RedBlackTree<Integer> openLoop = new RedBlackTree<>();
+            WorkloadReplayer.Result closed = replayer.replayClosedLoop(closedLoop);
+            WorkloadReplayer.Result open = replayer.replayOpenLoop(openLoop, 10_000);
+
+            return closed.getLatencies().getCount() == 23 && open.getLatencies().getCount() == 23
+                && closedLoop.range(null, null).equals(recorded.range(null, null))
+                && openLoop.range(null, null).equals(recorded.range(null, null));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Tests that string values and clear() survive a round trip through a trace, and that
+     * a value too long for the KeyCodec is rejected without corrupting the trace.
+     * @return true if the too long value is neither recorded nor forwarded, and the replayed
+     * tree holds the same values as the wrapped tree: the ones inserted after clear()
+     */
+    public static boolean test2() {
+        try {
+            Path trace = Files.createTempFile("workload", ".trace");
+            RedBlackTree<String> recorded = new RedBlackTree<>();
+
+            try (WorkloadRecorder<String> recorder = new WorkloadRecorder<>(recorded, KeyCodec.STRING, trace)) {
+                recorder.insert("https://example.com/a");
+                recorder.clear();
+                recorder.insert("https://example.com/b");
+                try {
+                    recorder.insert("x".repeat(KeyCodec.MAX_STRING_BYTES + 1));
+                    return false;
+                } catch (UncheckedIOException e) {
+                    // Expected: the value is too long to encode.
+                }
+                recorder.insert("https://example.com/\u00E9");
+            }
+
+            RedBlackTree<String> replayed = new RedBlackTree<>();
+            new WorkloadReplayer<>(trace, KeyCodec.STRING).replayClosedLoop(replayed);
+            Files.delete(trace);
+
+            return replayed.size() == 2 && !replayed.contains("https://example.com/a")
+                && replayed.contains("https://example.com/\u00E9")
+                && replayed.range(null, null).equals(recorded.range(null, null));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    public static void main (String[] args) {
+        System.out.println("Test 1: " + test1());
+        System.out.println("Test 2: " + test2());
+    }
+
+}
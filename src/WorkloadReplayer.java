@@ -0,0 +1,222 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a trace written by a WorkloadRecorder against any SortedCollection and
+ * measures the latency of every operation.
+ *
+ * In closed-loop mode, each operation starts as soon as the previous one returns.
+ * In open-loop mode, operations are started on a fixed schedule at a target rate, and
+ * latencies are measured from when an operation was scheduled to start, so that time
+ * spent waiting behind a slow operation is counted as well.
+ */
+public class WorkloadReplayer<T extends Comparable<T>> {
+
+    // below this many nanoseconds, waiting for the next scheduled operation spins instead of parking
+    private static final long SPIN_THRESHOLD = 50_000;
+
+    // the trace, loaded into memory so that replaying it does not read the file
+    private byte[] ops = new byte[1024];
+    private Object[] keys = new Object[1024];
+    private int count = 0;
+
+    /**
+     * Loads a trace file into memory.
+     * @param traceFile a file written by a WorkloadRecorder
+     * @param codec decodes the values in the trace, must match the recorder's KeyCodec
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    public WorkloadReplayer(Path traceFile, KeyCodec<T> codec) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(traceFile), 1 << 16))) {
+            if (in.readInt() != WorkloadRecorder.MAGIC || in.readByte() != WorkloadRecorder.VERSION) {
+                throw new IOException(traceFile + " is not a workload trace.");
+            }
+
+            while (true) {
+                int op = in.read();
+                if (op < 0) {
+                    break;
+                }
+
+                // The recorded timing is skipped, replays run at their own pace.
+                while ((in.readByte() & 0x80) != 0) { }
+
+                if (count == ops.length) {
+                    ops = Arrays.copyOf(ops, count * 2);
+                    keys = Arrays.copyOf(keys, count * 2);
+                }
+                ops[count] = (byte)op;
+                keys[count] = (op == WorkloadRecorder.OP_INSERT || op == WorkloadRecorder.OP_CONTAINS)
+                    ? codec.read(in) : null;
+                count++;
+            }
+        } catch (EOFException e) {
+            throw new IOException(traceFile + " ends in the middle of an operation.", e);
+        }
+    }
+
+    /**
+     * @return the number of operations in the trace
+     */
+    public int operationCount() { return this.count; }
+
+    /**
+     * Replays every operation as soon as the previous one returns.
+     * @param target the collection the operations are replayed against
+     * @return the latency of every operation and the overall throughput
+     */
+    public Result replayClosedLoop(SortedCollection<T> target) {
+        LatencyHistogram latencies = new LatencyHistogram();
+        long start = System.nanoTime();
+        long previous = start;
+
+        for (int i = 0; i < count; i++) {
+            apply(target, i);
+            long now = System.nanoTime();
+            latencies.record(now - previous);
+            previous = now;
+        }
+
+        return new Result(latencies, previous - start);
+    }
+
+    /**
+     * Replays the operations on a fixed schedule, starting one every 1 / opsPerSecond seconds.
+     * @param target the collection the operations are replayed against
+     * @param opsPerSecond the rate at which operations are started
+     * @return the latency of every operation, measured from its scheduled start, and the
+     * overall throughput
+     * @throws IllegalArgumentException if opsPerSecond is not positive
+     */
+    public Result replayOpenLoop(SortedCollection<T> target, double opsPerSecond) {
+        if (!(opsPerSecond > 0)) {
+            throw new IllegalArgumentException("The target rate must be positive.");
+        }
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        double interval = 1e9 / opsPerSecond;
+        long start = System.nanoTime();
+        long now = start;
+
+        for (int i = 0; i < count; i++) {
+            long scheduled = start + (long)(i * interval);
+            while ((now = System.nanoTime()) < scheduled) {
+                if (scheduled - now > SPIN_THRESHOLD) {
+                    LockSupport.parkNanos(scheduled - now - SPIN_THRESHOLD);
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+
+            apply(target, i);
+            now = System.nanoTime();
+            latencies.record(now - scheduled);
+        }
+
+        return new Result(latencies, now - start);
+    }
+
+    /**
+     * Applies the operation at index i of the trace to target.
+     */
+    @SuppressWarnings("unchecked")
+    private void apply(SortedCollection<T> target, int i) {
+        switch (ops[i]) {
+            case WorkloadRecorder.OP_INSERT:
+                target.insert((T)keys[i]);
+                break;
+            case WorkloadRecorder.OP_CONTAINS:
+                target.contains((T)keys[i]);
+                break;
+            case WorkloadRecorder.OP_SIZE:
+                target.size();
+                break;
+            case WorkloadRecorder.OP_IS_EMPTY:
+                target.isEmpty();
+                break;
+            case WorkloadRecorder.OP_CLEAR:
+                target.clear();
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation code " + ops[i] + " in trace.");
+        }
+    }
+
+    /**
+     * The outcome of a single replay.
+     */
+    public static class Result {
+
+        private final LatencyHistogram latencies;
+        private final long elapsedNanos;
+
+        public Result(LatencyHistogram latencies, long elapsedNanos) {
+            this.latencies = latencies;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the latency of every replayed operation
+         */
+        public LatencyHistogram getLatencies() { return this.latencies; }
+
+        /**
+         * @return the time taken by the whole replay in nanoseconds
+         */
+        public long getElapsedNanos() { return this.elapsedNanos; }
+
+        /**
+         * @return the number of operations replayed per second
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : latencies.getCount() / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.0f ops/sec, %s", getThroughput(), latencies);
+        }
+
+    }
+
+    /**
+     * Replays a trace of integer or string values against a BinarySearchTree and a RedBlackTree.
+     * Usage: java WorkloadReplayer TRACE_FILE (int|string) [OPS_PER_SECOND]
+     * Without a rate the trace is replayed closed-loop, otherwise open-loop at that rate.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java WorkloadReplayer TRACE_FILE (int|string) [OPS_PER_SECOND]");
+            return;
+        }
+
+        Path trace = Path.of(args[0]);
+        double rate = (args.length > 2) ? Double.parseDouble(args[2]) : 0;
+        if (args[1].equals("string")) {
+            compare(new WorkloadReplayer<>(trace, KeyCodec.STRING), rate);
+        } else {
+            compare(new WorkloadReplayer<>(trace, KeyCodec.INTEGER), rate);
+        }
+    }
+
+    /**
+     * Prints the result of replaying the trace against every tree implementation.
+     */
+    private static <T extends Comparable<T>> void compare(WorkloadReplayer<T> replayer, double rate) {
+        System.out.println(replayer.operationCount() + " operations, "
+            + (rate > 0 ? "open-loop at " + rate + " ops/sec" : "closed-loop"));
+
+        for (SortedCollection<T> tree : List.<SortedCollection<T>>of(new BinarySearchTree<>(), new RedBlackTree<>())) {
+            Result result = (rate > 0) ? replayer.replayOpenLoop(tree, rate) : replayer.replayClosedLoop(tree);
+            System.out.println(tree.getClass().getSimpleName() + ": " + result);
+        }
+    }
+
+}